@@ -0,0 +1,157 @@
+import java.util.Arrays;
+
+/**
+ * For every vertex of a DAG, the complete set of its ancestors (itself included) with their distances, stored
+ * sorted by ancestor in one flat array. A query is then a merge-join of two short sorted runs rather than a
+ * traversal of the digraph.
+ * <p/>
+ * The sets are built in topological order, ancestors first, so that each vertex merges the already finished
+ * sets of its direct ancestors. This only works for a DAG; a digraph with a cycle is rejected. When the digraph
+ * grows, only the sets of the vertices whose ancestors changed are merged again.
+ */
+class AncestorIndex extends AncestralIndex {
+
+    // beyond this many vertices in both sets one search from them is cheaper than merging their ancestors
+    private static final int MAX_VERTICES = 3;
+
+    // the ancestors of v are ancestors[offsets[v]] .. ancestors[offsets[v + 1] - 1]
+    private final int[] offsets;
+    private final int[] ancestors;
+    private final int[] distances;
+
+    AncestorIndex(CompactDigraph digraph) {
+        this(digraph, null, ancestorsFirst(digraph));
+    }
+
+    /* Merges the sets of the vertices in order, which must list each of them after all of its ancestors among
+    them; the sets of every other vertex are copied from the previous index. */
+    private AncestorIndex(CompactDigraph digraph, AncestorIndex previous, int[] order) {
+        int vertices = digraph.V();
+        offsets = new int[vertices + 1];
+        int[][] vertexAncestors = new int[vertices][];
+        int[][] vertexDistances = new int[vertices][];
+
+        long[] merged = new long[16];
+        for (int v : order) {
+            int size = 1;
+            for (int i = digraph.begin(v); i < digraph.end(v); i++) {
+                int parent = digraph.target(i);
+                size += vertexAncestors[parent] != null ? vertexAncestors[parent].length : previous.sizeOf(parent);
+            }
+            if (merged.length < size) {
+                merged = new long[Math.max(size, 2 * merged.length)];
+            }
+
+            // sorting (ancestor, distance) pairs puts the shortest distance first among equal ancestors
+            int count = 0;
+            merged[count++] = (long) v << 32;
+            for (int edge = digraph.begin(v); edge < digraph.end(v); edge++) {
+                int parent = digraph.target(edge);
+                if (vertexAncestors[parent] != null) {
+                    for (int i = 0; i < vertexAncestors[parent].length; i++) {
+                        merged[count++] = ((long) vertexAncestors[parent][i] << 32) | (vertexDistances[parent][i] + 1);
+                    }
+                } else {
+                    for (int i = previous.offsets[parent]; i < previous.offsets[parent + 1]; i++) {
+                        merged[count++] = ((long) previous.ancestors[i] << 32) | (previous.distances[i] + 1);
+                    }
+                }
+            }
+            Arrays.sort(merged, 0, count);
+
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || (merged[i] >>> 32) != (merged[i - 1] >>> 32)) {
+                    merged[distinct++] = merged[i];
+                }
+            }
+
+            vertexAncestors[v] = new int[distinct];
+            vertexDistances[v] = new int[distinct];
+            for (int i = 0; i < distinct; i++) {
+                vertexAncestors[v][i] = (int) (merged[i] >>> 32);
+                vertexDistances[v][i] = (int) merged[i];
+            }
+        }
+
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] = offsets[v] + (vertexAncestors[v] != null ? vertexAncestors[v].length : previous.sizeOf(v));
+        }
+        ancestors = new int[offsets[vertices]];
+        distances = new int[offsets[vertices]];
+        for (int v = 0; v < vertices; v++) {
+            if (vertexAncestors[v] != null) {
+                System.arraycopy(vertexAncestors[v], 0, ancestors, offsets[v], vertexAncestors[v].length);
+                System.arraycopy(vertexDistances[v], 0, distances, offsets[v], vertexDistances[v].length);
+            } else {
+                System.arraycopy(previous.ancestors, previous.offsets[v], ancestors, offsets[v], previous.sizeOf(v));
+                System.arraycopy(previous.distances, previous.offsets[v], distances, offsets[v], previous.sizeOf(v));
+            }
+        }
+    }
+
+    // only the sets of the changed vertices are merged again
+    @Override
+    AncestralIndex update(CompactDigraph digraph, int[] changed) {
+        int[] order = digraph.sinksFirst(changed);
+        if (order == null) {
+            throw new IllegalArgumentException("Digraph contains a cycle");
+        }
+        return new AncestorIndex(digraph, this, order);
+    }
+
+    private int sizeOf(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    @Override
+    int size() {
+        return ancestors.length;
+    }
+
+    @Override
+    long memoryBytes() {
+        return 4L * (offsets.length + ancestors.length + distances.length);
+    }
+
+    // the ancestors of each set are merged once, keeping the shortest distance to each, and then joined once
+    @Override
+    long query(int[] v, int[] w) {
+        if (v.length == 1 && w.length == 1) {
+            return query(v[0], w[0]);
+        }
+        if (v.length + w.length > MAX_VERTICES) {
+            return UNANSWERED;
+        }
+
+        long[] a = new long[entries(v, offsets)];
+        long[] b = new long[entries(w, offsets)];
+        return join(a, union(v, offsets, ancestors, distances, a), b, union(w, offsets, ancestors, distances, b));
+    }
+
+    @Override
+    long query(int v, int w) {
+        int length = -1;
+        int ancestor = -1;
+
+        int i = offsets[v];
+        int j = offsets[w];
+        while (i < offsets[v + 1] && j < offsets[w + 1]) {
+            if (ancestors[i] < ancestors[j]) {
+                i++;
+            } else if (ancestors[i] > ancestors[j]) {
+                j++;
+            } else {
+                int distance = distances[i] + distances[j];
+                if (length == -1 || distance < length) {
+                    length = distance;
+                    ancestor = ancestors[i];
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return SAP.pack(length, ancestor);
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/**
+ * Structure precomputed from a digraph that answers shortest ancestral path queries without searching it.
+ * Results are packed as by SAP: the length in the high 32 bits and the ancestor in the low 32 bits.
+ */
+abstract class AncestralIndex {
+
+    // what query returns for a pair the index does not cover, which is then left to a search
+    static final long UNANSWERED = Long.MIN_VALUE;
+
+    abstract long query(int v, int w);
+
+    // number of (vertex, ancestor) entries stored
+    abstract int size();
+
+    // approximate heap footprint of the stored arrays
+    abstract long memoryBytes();
+
+    /* The index of a digraph grown from this one by adding vertices and edges. The changed vertices are the new
+    ones and every descendant of a vertex that gained an edge; no other vertex has new ancestors. */
+    abstract AncestralIndex update(CompactDigraph digraph, int[] changed);
+
+    // best path over every pair of vertices from v and w; UNANSWERED if any pair is
+    long query(int[] v, int[] w) {
+        long best = SAP.pack(-1, -1);
+        for (int vertex : v) {
+            for (int other : w) {
+                long found = query(vertex, other);
+                if (found == UNANSWERED) {
+                    return UNANSWERED;
+                }
+                best = shorter(best, found);
+            }
+        }
+        return best;
+    }
+
+    // the shorter of two packed results, a result without a path being the longest
+    static long shorter(long best, long found) {
+        int length = SAP.lengthOf(found);
+        if (length != -1 && (SAP.lengthOf(best) == -1 || length < SAP.lengthOf(best))) {
+            return found;
+        }
+        return best;
+    }
+
+    // the number of entries in the runs of the given vertices
+    static int entries(int[] vertices, int[] offsets) {
+        int entries = 0;
+        for (int v : vertices) {
+            entries += offsets[v + 1] - offsets[v];
+        }
+        return entries;
+    }
+
+    /* Merges the runs of the given vertices, runs of keys in increasing order with their distances, into one run
+    of (key, distance) pairs packed into longs like DistanceMatrix.ancestors(), and returns its length. A key in
+    several runs keeps its shortest distance, which is its distance from the whole set. The merged array must
+    have room for entries(vertices, offsets). */
+    static int union(int[] vertices, int[] offsets, int[] keys, int[] distances, long[] merged) {
+        int count = 0;
+        for (int v : vertices) {
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                merged[count++] = ((long) keys[i] << 32) | distances[i];
+            }
+        }
+        if (vertices.length == 1) {
+            return count;
+        }
+
+        // sorting (key, distance) pairs puts the shortest distance first among equal keys
+        Arrays.sort(merged, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || (merged[i] >>> 32) != (merged[i - 1] >>> 32)) {
+                merged[distinct++] = merged[i];
+            }
+        }
+        return distinct;
+    }
+
+    // the shortest path through a key of two union() runs, packed with that key as the ancestor
+    static long join(long[] a, int lengthA, long[] b, int lengthB) {
+        int length = -1;
+        int key = -1;
+        int i = 0;
+        int j = 0;
+        while (i < lengthA && j < lengthB) {
+            long keyA = a[i] >>> 32;
+            long keyB = b[j] >>> 32;
+            if (keyA < keyB) {
+                i++;
+            } else if (keyA > keyB) {
+                j++;
+            } else {
+                int distance = (int) a[i] + (int) b[j];
+                if (length == -1 || distance < length) {
+                    length = distance;
+                    key = (int) keyA;
+                }
+                i++;
+                j++;
+            }
+        }
+        return SAP.pack(length, key);
+    }
+
+    // every vertex after all of its ancestors; the digraph must be a DAG
+    static int[] ancestorsFirst(CompactDigraph digraph) {
+        int[] order = digraph.sinksFirst();
+        if (order == null) {
+            throw new IllegalArgumentException("Digraph contains a cycle");
+        }
+        return order;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Immutable result of a shortest ancestral path query: the length of the path and the common ancestor on it,
+ * both -1 if the vertices have no common ancestor.
+ */
+public final class AncestralPath {
+
+    private static final AncestralPath NONE = new AncestralPath(-1, -1);
+
+    private final int length;
+    private final int ancestor;
+
+    private AncestralPath(int length, int ancestor) {
+        this.length = length;
+        this.ancestor = ancestor;
+    }
+
+    static AncestralPath of(int length, int ancestor) {
+        if (ancestor == -1) {
+            return NONE;
+        }
+        return new AncestralPath(length, ancestor);
+    }
+
+    // is there a common ancestor at all?
+    public boolean hasPath() {
+        return ancestor != -1;
+    }
+
+    // length of the shortest ancestral path; -1 if no such path
+    public int length() {
+        return length;
+    }
+
+    // a common ancestor that participates in the shortest ancestral path; -1 if no such path
+    public int ancestor() {
+        return ancestor;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("length = %d, ancestor = %d", length, ancestor);
+    }
+}
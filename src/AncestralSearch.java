@@ -0,0 +1,352 @@
+import java.util.Arrays;
+
+/**
+ * Bidirectional lockstep BFS over a digraph that finds a shortest ancestral path between two vertex sets.
+ * The digraph is walked in its compact form so that following edges does not create iterators.
+ * <p/>
+ * The scratch arrays are allocated once, sized to the digraph, and reused across searches. Instead of clearing
+ * them, every search bumps a stamp and a vertex only counts as visited when its mark equals the current stamp,
+ * so starting a new search costs nothing and only the vertices the search actually reaches are ever touched.
+ * An instance is therefore not safe to share between threads.
+ * <p/>
+ * The two sides are stamped separately so that one v side can be prepared once, fully expanded, and then
+ * searched against many w sides in turn.
+ */
+class AncestralSearch {
+
+    private static final int NO_PATH = -1;
+
+    private final CompactDigraph digraph;
+
+    private final int[] vMarked;
+    private final int[] wMarked;
+    private final int[] vDistTo;
+    private final int[] wDistTo;
+    private final int[] vEdgeTo;
+    private final int[] wEdgeTo;
+    private final int[] vQueue;
+    private final int[] wQueue;
+    private int vHead;
+    private int vTail;
+    private int wHead;
+    private int wTail;
+    private int vStamp;
+    private int wStamp;
+
+    private int length;
+    private int ancestor;
+
+    // searchBounded gives up once more than this many vertices have been visited
+    private int visitBudget = Integer.MAX_VALUE;
+
+    // every ancestor at the shortest length found so far, kept only by searchTies
+    private boolean collectTies;
+    private int[] ties = new int[4];
+    private int tieCount;
+
+    AncestralSearch(CompactDigraph digraph) {
+        this.digraph = digraph;
+
+        int vertices = digraph.V();
+        vMarked = new int[vertices];
+        wMarked = new int[vertices];
+        vDistTo = new int[vertices];
+        wDistTo = new int[vertices];
+        vEdgeTo = new int[vertices];
+        wEdgeTo = new int[vertices];
+        vQueue = new int[vertices];
+        wQueue = new int[vertices];
+    }
+
+    // length of the path found by the last search; -1 if there was no such path
+    int length() {
+        return length;
+    }
+
+    // common ancestor on the path found by the last search; -1 if there was no such path
+    int ancestor() {
+        return ancestor;
+    }
+
+    /* The path found by the last search: the vertices from a v source up to the ancestor and then down to a w
+    source. Every visited vertex remembers the vertex it was reached from, so this only walks those back from
+    the ancestor. Empty if there was no such path. */
+    int[] path() {
+        if (ancestor == NO_PATH) {
+            return new int[0];
+        }
+
+        int[] path = new int[length + 1];
+        int vDistance = vDistTo[ancestor];
+        for (int vertex = ancestor, i = vDistance; i >= 0; vertex = vEdgeTo[vertex], i--) {
+            path[i] = vertex;
+        }
+        for (int vertex = wEdgeTo[ancestor], i = vDistance + 1; i <= length; vertex = wEdgeTo[vertex], i++) {
+            path[i] = vertex;
+        }
+        return path;
+    }
+
+    void search(int v, int w) {
+        startV();
+        startW();
+        visitV(v, 0, NO_PATH);
+        visitW(w, 0, NO_PATH);
+        run();
+    }
+
+    void search(Iterable<Integer> v, Iterable<Integer> w) {
+        startV();
+        startW();
+        visitV(v);
+        visitW(w);
+        run();
+    }
+
+    void search(int[] v, int[] w) {
+        startV();
+        startW();
+        visitV(v);
+        visitW(w);
+        run();
+    }
+
+    /* Like search, but also collects every ancestor of a shortest path, for ties(). A tied ancestor may lie up to
+    the full length away from one side, so both sides are expanded one level further than search needs. */
+    void searchTies(int v, int w) {
+        collectTies = true;
+        try {
+            search(v, w);
+        } finally {
+            collectTies = false;
+        }
+    }
+
+    void searchTies(Iterable<Integer> v, Iterable<Integer> w) {
+        collectTies = true;
+        try {
+            search(v, w);
+        } finally {
+            collectTies = false;
+        }
+    }
+
+    /* Like search, but only finds paths of at most maxLength and gives up, finding nothing, once it has visited
+    more than maxVisits vertices. Seeding the best length with maxLength + 1 makes the usual early exit stop the
+    expansion as soon as no path within the bound can still be found. */
+    void searchBounded(int v, int w, int maxLength, int maxVisits) {
+        startV();
+        startW();
+        visitV(v, 0, NO_PATH);
+        visitW(w, 0, NO_PATH);
+        runBounded(maxLength, maxVisits);
+    }
+
+    void searchBounded(Iterable<Integer> v, Iterable<Integer> w, int maxLength, int maxVisits) {
+        startV();
+        startW();
+        visitV(v);
+        visitW(w);
+        runBounded(maxLength, maxVisits);
+    }
+
+    void searchBounded(int[] v, int[] w, int maxLength, int maxVisits) {
+        startV();
+        startW();
+        visitV(v);
+        visitW(w);
+        runBounded(maxLength, maxVisits);
+    }
+
+    private void runBounded(int maxLength, int maxVisits) {
+        if (maxLength < Integer.MAX_VALUE) {
+            length = Math.min(length, maxLength + 1);
+        }
+        visitBudget = maxVisits;
+        try {
+            run();
+        } finally {
+            visitBudget = Integer.MAX_VALUE;
+        }
+        if (vTail + wTail > maxVisits) {
+            length = NO_PATH;
+            ancestor = NO_PATH;
+        }
+    }
+
+    // the ancestors of all shortest paths found by the last searchTies, in increasing order
+    int[] ties() {
+        int[] sorted = Arrays.copyOf(ties, tieCount);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // runs a complete BFS from v, to be followed by any number of searchPrepared calls
+    void prepare(int v) {
+        startV();
+        startW();
+        visitV(v, 0, NO_PATH);
+        expandAllV();
+    }
+
+    void prepare(Iterable<Integer> v) {
+        startV();
+        startW();
+        visitV(v);
+        expandAllV();
+    }
+
+    // searches from w against the v side of the last prepare call
+    void searchPrepared(int w) {
+        startW();
+        visitW(w, 0, NO_PATH);
+        run();
+    }
+
+    void searchPrepared(Iterable<Integer> w) {
+        startW();
+        visitW(w);
+        run();
+    }
+
+    private void startV() {
+        if (vStamp == Integer.MAX_VALUE) {
+            Arrays.fill(vMarked, 0);
+            vStamp = 0;
+        }
+        vStamp++;
+
+        vHead = 0;
+        vTail = 0;
+    }
+
+    private void startW() {
+        if (wStamp == Integer.MAX_VALUE) {
+            Arrays.fill(wMarked, 0);
+            wStamp = 0;
+        }
+        wStamp++;
+
+        wHead = 0;
+        wTail = 0;
+        length = Integer.MAX_VALUE;
+        ancestor = NO_PATH;
+        tieCount = 0;
+    }
+
+    private void expandAllV() {
+        while (vHead < vTail) {
+            expandVLevel();
+        }
+    }
+
+    /* Both frontiers are expanded one level at a time, alternating sides. Every vertex reached by both sides is a
+    candidate ancestor, and the search stops once the next level can no longer beat the best candidate. */
+    private void run() {
+        int level = 0;
+        int lookahead = collectTies ? 0 : 1;
+        while ((vHead < vTail || wHead < wTail) && level + lookahead < length && vTail + wTail <= visitBudget) {
+            expandVLevel();
+            expandWLevel();
+            level++;
+        }
+
+        if (ancestor == NO_PATH) {
+            length = NO_PATH;
+        }
+    }
+
+    private void expandVLevel() {
+        int levelEnd = vTail;
+        while (vHead < levelEnd && vTail + wTail <= visitBudget) {
+            int vertex = vQueue[vHead++];
+            int distance = vDistTo[vertex] + 1;
+            for (int edge = digraph.begin(vertex); edge < digraph.end(vertex); edge++) {
+                int next = digraph.target(edge);
+                if (vMarked[next] != vStamp) {
+                    visitV(next, distance, vertex);
+                }
+            }
+        }
+    }
+
+    private void expandWLevel() {
+        int levelEnd = wTail;
+        while (wHead < levelEnd && vTail + wTail <= visitBudget) {
+            int vertex = wQueue[wHead++];
+            int distance = wDistTo[vertex] + 1;
+            for (int edge = digraph.begin(vertex); edge < digraph.end(vertex); edge++) {
+                int next = digraph.target(edge);
+                if (wMarked[next] != wStamp) {
+                    visitW(next, distance, vertex);
+                }
+            }
+        }
+    }
+
+    private void visitV(Iterable<Integer> sources) {
+        for (int vertex : sources) {
+            if (vMarked[vertex] != vStamp) {
+                visitV(vertex, 0, NO_PATH);
+            }
+        }
+    }
+
+    private void visitW(Iterable<Integer> sources) {
+        for (int vertex : sources) {
+            if (wMarked[vertex] != wStamp) {
+                visitW(vertex, 0, NO_PATH);
+            }
+        }
+    }
+
+    private void visitV(int[] sources) {
+        for (int vertex : sources) {
+            if (vMarked[vertex] != vStamp) {
+                visitV(vertex, 0, NO_PATH);
+            }
+        }
+    }
+
+    private void visitW(int[] sources) {
+        for (int vertex : sources) {
+            if (wMarked[vertex] != wStamp) {
+                visitW(vertex, 0, NO_PATH);
+            }
+        }
+    }
+
+    private void visitV(int vertex, int distance, int from) {
+        vMarked[vertex] = vStamp;
+        vDistTo[vertex] = distance;
+        vEdgeTo[vertex] = from;
+        vQueue[vTail++] = vertex;
+        if (wMarked[vertex] == wStamp) {
+            updateBest(vertex, distance + wDistTo[vertex]);
+        }
+    }
+
+    private void visitW(int vertex, int distance, int from) {
+        wMarked[vertex] = wStamp;
+        wDistTo[vertex] = distance;
+        wEdgeTo[vertex] = from;
+        wQueue[wTail++] = vertex;
+        if (vMarked[vertex] == vStamp) {
+            updateBest(vertex, distance + vDistTo[vertex]);
+        }
+    }
+
+    private void updateBest(int vertex, int distance) {
+        if (distance < length) {
+            length = distance;
+            ancestor = vertex;
+            tieCount = 0;
+        }
+        if (collectTies && distance == length) {
+            if (tieCount == ties.length) {
+                ties = Arrays.copyOf(ties, 2 * tieCount);
+            }
+            ties[tieCount++] = vertex;
+        }
+    }
+}
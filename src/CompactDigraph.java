@@ -0,0 +1,258 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable digraph in compressed sparse row form: the edges leaving v are targets[offsets[v]] ..
+ * targets[offsets[v + 1] - 1]. Two int arrays replace the Bag of boxed Integers per vertex used by Digraph,
+ * which saves the object headers and keeps each adjacency list contiguous in memory for the searches.
+ */
+final class CompactDigraph {
+
+    private final int[] offsets;
+    private final int[] targets;
+
+    // wraps arrays that already are in CSR form; they must not be changed afterwards
+    CompactDigraph(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    // copies G; the edges of each vertex keep the order G.adj() returns them in
+    CompactDigraph(Digraph G) {
+        offsets = new int[G.V() + 1];
+        for (int v = 0; v < G.V(); v++) {
+            int outdegree = 0;
+            for (int w : G.adj(v)) {
+                outdegree++;
+            }
+            offsets[v + 1] = offsets[v] + outdegree;
+        }
+
+        targets = new int[offsets[G.V()]];
+        for (int v = 0; v < G.V(); v++) {
+            int i = offsets[v];
+            for (int w : G.adj(v)) {
+                targets[i++] = w;
+            }
+        }
+    }
+
+    // the digraph on the given number of vertices with an edge from[i] -> to[i] for every i
+    CompactDigraph(int vertices, int[] from, int[] to) {
+        offsets = new int[vertices + 1];
+        for (int v : from) {
+            offsets[v + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+
+        targets = new int[from.length];
+        int[] next = new int[vertices];
+        System.arraycopy(offsets, 0, next, 0, vertices);
+        for (int i = 0; i < from.length; i++) {
+            targets[next[from[i]]++] = to[i];
+        }
+    }
+
+    /* This digraph grown to the given number of vertices, with an edge from[i] -> to[i] added for every i. The
+    edges of each vertex keep their order and the added ones come after them. */
+    CompactDigraph withEdges(int vertices, int[] from, int[] to) {
+        int[] grownOffsets = new int[vertices + 1];
+        for (int v = 0; v < V(); v++) {
+            grownOffsets[v + 1] = outdegree(v);
+        }
+        for (int v : from) {
+            grownOffsets[v + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            grownOffsets[v + 1] += grownOffsets[v];
+        }
+
+        int[] grownTargets = new int[targets.length + from.length];
+        int[] next = new int[vertices];
+        for (int v = 0; v < vertices; v++) {
+            next[v] = grownOffsets[v];
+            if (v < V()) {
+                System.arraycopy(targets, offsets[v], grownTargets, next[v], outdegree(v));
+                next[v] += outdegree(v);
+            }
+        }
+        for (int i = 0; i < from.length; i++) {
+            grownTargets[next[from[i]]++] = to[i];
+        }
+
+        return new CompactDigraph(grownOffsets, grownTargets);
+    }
+
+    int V() {
+        return offsets.length - 1;
+    }
+
+    int E() {
+        return targets.length;
+    }
+
+    // index of the first edge leaving v
+    int begin(int v) {
+        return offsets[v];
+    }
+
+    // one past the index of the last edge leaving v
+    int end(int v) {
+        return offsets[v + 1];
+    }
+
+    // vertex the edge with the given index points to
+    int target(int edge) {
+        return targets[edge];
+    }
+
+    int outdegree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    // the digraph with every edge reversed
+    CompactDigraph reverse() {
+        int[] reverseOffsets = new int[offsets.length];
+        for (int edge = 0; edge < targets.length; edge++) {
+            reverseOffsets[targets[edge] + 1]++;
+        }
+        for (int v = 0; v < V(); v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+
+        int[] reverseTargets = new int[targets.length];
+        int[] next = new int[V()];
+        System.arraycopy(reverseOffsets, 0, next, 0, V());
+        for (int v = 0; v < V(); v++) {
+            for (int edge = offsets[v]; edge < offsets[v + 1]; edge++) {
+                reverseTargets[next[targets[edge]]++] = v;
+            }
+        }
+
+        return new CompactDigraph(reverseOffsets, reverseTargets);
+    }
+
+    /* Kahn's algorithm run from the sinks: a vertex is taken once every vertex it points to has been taken. For
+    a hypernym digraph that lists the roots first and every synset after all of its ancestors. Returns null if
+    some vertices are never taken, which means they lie on or below a cycle. */
+    int[] sinksFirst() {
+        int vertices = V();
+        CompactDigraph reverse = reverse();
+        int[] remaining = new int[vertices];
+        int[] order = new int[vertices];
+        int tail = 0;
+        for (int v = 0; v < vertices; v++) {
+            remaining[v] = outdegree(v);
+            if (remaining[v] == 0) {
+                order[tail++] = v;
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int v = order[head];
+            for (int i = reverse.begin(v); i < reverse.end(v); i++) {
+                if (--remaining[reverse.target(i)] == 0) {
+                    order[tail++] = reverse.target(i);
+                }
+            }
+        }
+
+        return tail < vertices ? null : order;
+    }
+
+    /* As above, but only over the given vertices and the edges between them, so the cost depends on the size of
+    the region rather than of the digraph. Returns null if the region contains a cycle. */
+    int[] sinksFirst(int[] region) {
+        Map<Integer, Integer> local = new HashMap<Integer, Integer>();
+        for (int v : region) {
+            local.put(v, local.size());
+        }
+
+        // edges between region vertices, reversed, in CSR form over local indexes
+        int[] remaining = new int[region.length];
+        int[] reverseOffsets = new int[region.length + 1];
+        for (int v : region) {
+            for (int edge = begin(v); edge < end(v); edge++) {
+                Integer target = local.get(targets[edge]);
+                if (target != null) {
+                    remaining[local.get(v)]++;
+                    reverseOffsets[target + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < region.length; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        int[] reverseTargets = new int[reverseOffsets[region.length]];
+        int[] next = Arrays.copyOf(reverseOffsets, region.length);
+        for (int v : region) {
+            for (int edge = begin(v); edge < end(v); edge++) {
+                Integer target = local.get(targets[edge]);
+                if (target != null) {
+                    reverseTargets[next[target]++] = local.get(v);
+                }
+            }
+        }
+
+        int[] order = new int[region.length];
+        int tail = 0;
+        for (int i = 0; i < region.length; i++) {
+            if (remaining[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int i = order[head];
+            for (int edge = reverseOffsets[i]; edge < reverseOffsets[i + 1]; edge++) {
+                if (--remaining[reverseTargets[edge]] == 0) {
+                    order[tail++] = reverseTargets[edge];
+                }
+            }
+        }
+        if (tail < region.length) {
+            return null;
+        }
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = region[order[i]];
+        }
+        return order;
+    }
+
+    // every vertex reachable from the starts, the starts included
+    int[] reachableFrom(int[] starts) {
+        Set<Integer> marked = new HashSet<Integer>();
+        int[] queue = new int[16];
+        int tail = 0;
+        for (int v : starts) {
+            if (marked.add(v)) {
+                if (tail == queue.length) {
+                    queue = Arrays.copyOf(queue, 2 * tail);
+                }
+                queue[tail++] = v;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            for (int edge = begin(v); edge < end(v); edge++) {
+                if (marked.add(targets[edge])) {
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, 2 * tail);
+                    }
+                    queue[tail++] = targets[edge];
+                }
+            }
+        }
+        return Arrays.copyOf(queue, tail);
+    }
+
+    // approximate heap footprint of the two arrays
+    long memoryBytes() {
+        return 4L * (offsets.length + targets.length);
+    }
+}
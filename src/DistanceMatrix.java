@@ -0,0 +1,210 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Shortest ancestral path distances between every pair of a list of vertex sets, for WordNet.distanceMatrix().
+ * <p/>
+ * Each set gets one BFS up the digraph, which yields all of its ancestors with their distances as a sorted array
+ * of (ancestor, distance) pairs packed into longs (see ancestors()). The distance between two sets is then a
+ * merge-join of their two arrays, so n sets cost n searches rather than the n * n / 2 of pairwise queries. Both
+ * phases are split into ForkJoin tasks.
+ */
+final class DistanceMatrix {
+
+    private static final int SLICE = 32;
+
+    private final CompactDigraph digraph;
+    private final List<? extends Iterable<Integer>> sources;
+    private final long[][] ancestors;
+    private final int[] distances;
+
+    // the BFS from sources.get(from) .. sources.get(to - 1)
+    private final class Ancestors extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        private Ancestors(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SLICE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Ancestors(from, middle), new Ancestors(middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                ancestors[i] = ancestors(digraph, sources.get(i));
+            }
+        }
+    }
+
+    // rows from .. to - 1, each only right of the diagonal and mirrored to the left
+    private final class Rows extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        private Rows(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            // rows get shorter towards the bottom, so split by the number of pairs rather than of rows
+            long pairs = pairsBefore(to) - pairsBefore(from);
+            if (to - from > 1 && pairs > SLICE * (long) sources.size()) {
+                int middle = from + 1;
+                while (middle < to - 1 && pairsBefore(middle) - pairsBefore(from) < pairs / 2) {
+                    middle++;
+                }
+                invokeAll(new Rows(from, middle), new Rows(middle, to));
+                return;
+            }
+
+            int n = sources.size();
+            for (int i = from; i < to; i++) {
+                for (int j = i; j < n; j++) {
+                    int distance = distance(ancestors[i], ancestors[j]);
+                    distances[i * n + j] = distance;
+                    distances[j * n + i] = distance;
+                }
+            }
+        }
+
+        private long pairsBefore(int row) {
+            long n = sources.size();
+            return row * n - (long) row * (row - 1) / 2;
+        }
+    }
+
+    private DistanceMatrix(CompactDigraph digraph, List<? extends Iterable<Integer>> sources) {
+        this.digraph = digraph;
+        this.sources = sources;
+        ancestors = new long[sources.size()][];
+        distances = new int[sources.size() * sources.size()];
+    }
+
+    /* The distances as a row-major sources.size() x sources.size() matrix: entry i * n + j is the length of the
+    shortest ancestral path between sources.get(i) and sources.get(j), -1 if there is none. */
+    static int[] compute(CompactDigraph digraph, List<? extends Iterable<Integer>> sources, ForkJoinPool pool) {
+        if ((long) sources.size() * sources.size() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many vertex sets for one matrix: " + sources.size());
+        }
+
+        // a matrix that fits in one task is cheaper to compute right here than to hand to the pool
+        DistanceMatrix matrix = new DistanceMatrix(digraph, sources);
+        if (sources.size() <= SLICE) {
+            matrix.new Ancestors(0, sources.size()).compute();
+            matrix.new Rows(0, sources.size()).compute();
+        } else {
+            pool.invoke(matrix.new Ancestors(0, sources.size()));
+            pool.invoke(matrix.new Rows(0, sources.size()));
+        }
+        return matrix.distances;
+    }
+
+    /* Every ancestor of the sources, the sources included, with its distance from the nearest of them, as sorted
+    (ancestor, distance) pairs packed into longs. Ancestor sets are small, so the BFS keeps its distances in a
+    hash map rather than in arrays the size of the digraph. */
+    static long[] ancestors(CompactDigraph digraph, Iterable<Integer> sources) {
+        Map<Integer, Integer> distTo = new HashMap<Integer, Integer>();
+        int[] queue = new int[16];
+        int head = 0;
+        int tail = 0;
+        for (int source : sources) {
+            if (!distTo.containsKey(source)) {
+                distTo.put(source, 0);
+                if (tail == queue.length) {
+                    queue = Arrays.copyOf(queue, 2 * tail);
+                }
+                queue[tail++] = source;
+            }
+        }
+        while (head < tail) {
+            int v = queue[head++];
+            int distance = distTo.get(v) + 1;
+            for (int edge = digraph.begin(v); edge < digraph.end(v); edge++) {
+                int w = digraph.target(edge);
+                if (!distTo.containsKey(w)) {
+                    distTo.put(w, distance);
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, 2 * tail);
+                    }
+                    queue[tail++] = w;
+                }
+            }
+        }
+
+        long[] ancestors = new long[tail];
+        for (int i = 0; i < tail; i++) {
+            ancestors[i] = ((long) queue[i] << 32) | distTo.get(queue[i]);
+        }
+        Arrays.sort(ancestors);
+        return ancestors;
+    }
+
+    // length of the shortest ancestral path between two sets, from their ancestors(); -1 if there is none
+    static int distance(long[] a, long[] b) {
+        int length = -1;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            long ancestorA = a[i] >>> 32;
+            long ancestorB = b[j] >>> 32;
+            if (ancestorA < ancestorB) {
+                i++;
+            } else if (ancestorA > ancestorB) {
+                j++;
+            } else {
+                int distance = (int) a[i] + (int) b[j];
+                if (length == -1 || distance < length) {
+                    length = distance;
+                }
+                i++;
+                j++;
+            }
+        }
+        return length;
+    }
+
+    /* Writes the matrix in a binary form: the int n followed by the n * n distances as ints, row by row, all
+    big-endian as by DataOutputStream. */
+    static void write(String file, int n, int[] distances) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            out.writeInt(n);
+            for (int distance : distances) {
+                out.writeInt(distance);
+            }
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // already failing with the original exception
+                }
+            }
+        }
+    }
+}
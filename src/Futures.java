@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Waits for tasks submitted to an executor and hands back their results, rethrowing whatever a task threw as
+ * itself rather than wrapped in an ExecutionException. Also tells how many tasks an executor runs at once.
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    // the task's result, rethrowing whatever the task threw
+    static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a task", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // the results of all tasks, in order
+    static <T> List<T> awaitAll(List<Future<T>> futures) {
+        List<T> results = new ArrayList<T>(futures.size());
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    /* The number of tasks the executor runs at once, for splitting work into that many parts. A pool's core
+    threads are the ones it keeps running; beyond them it only grows once its queue is full, if ever, so the
+    maximum size says little. Never more than there are processors. */
+    static int threads(ExecutorService executor) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (executor instanceof ThreadPoolExecutor) {
+            return Math.max(1, Math.min(processors, ((ThreadPoolExecutor) executor).getCorePoolSize()));
+        }
+        if (executor instanceof ForkJoinPool) {
+            return Math.min(processors, ((ForkJoinPool) executor).getParallelism());
+        }
+        return processors;
+    }
+}
@@ -0,0 +1,211 @@
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Pruned landmark labeling (2-hop labeling) of the ancestor relation of a DAG.
+ * <p/>
+ * Every vertex gets a label: a short list of hubs among its ancestors, with distances. Hubs are processed in a
+ * rank order where every ancestor comes before its descendants, and each hub runs a BFS down to its descendants
+ * that stops at any vertex whose distance to the hub the labels built so far already cover. With that order the
+ * highest ranked vertex of a shortest ancestral path is always its common ancestor, and the usual pruned
+ * labeling argument shows it ends up in both labels. A query is therefore a merge-join of two labels, which are
+ * usually much shorter than the complete ancestor sets kept by AncestorIndex.
+ */
+class LandmarkLabels extends AncestralIndex {
+
+    // beyond this many vertices in both sets one search from them is cheaper than merging their labels
+    private static final int MAX_VERTICES = 4;
+
+    // the label of v is hubs[offsets[v]] .. hubs[offsets[v + 1] - 1], hub ranks in increasing order
+    private final int[] offsets;
+    private final int[] hubs;
+    private final int[] distances;
+    private final int[] vertexOfRank;
+
+    LandmarkLabels(CompactDigraph digraph) {
+        int vertices = digraph.V();
+        CompactDigraph children = digraph.reverse();
+        vertexOfRank = rankOrder(digraph, children);
+
+        int[][] labelHubs = new int[vertices][];
+        int[][] labelDistances = new int[vertices][];
+        int[] labelSizes = new int[vertices];
+        for (int v = 0; v < vertices; v++) {
+            labelHubs[v] = new int[2];
+            labelDistances[v] = new int[2];
+        }
+
+        // hubDistance[r] is the distance from the current hub to the hub of rank r, if that one is in its label
+        int[] hubDistance = new int[vertices];
+        Arrays.fill(hubDistance, Integer.MAX_VALUE);
+        int[] distTo = new int[vertices];
+        int[] marked = new int[vertices];
+        int[] queue = new int[vertices];
+
+        for (int rank = 0; rank < vertices; rank++) {
+            int hub = vertexOfRank[rank];
+            for (int i = 0; i < labelSizes[hub]; i++) {
+                hubDistance[labelHubs[hub][i]] = labelDistances[hub][i];
+            }
+
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = hub;
+            marked[hub] = rank + 1;
+            distTo[hub] = 0;
+            while (head < tail) {
+                int vertex = queue[head++];
+                if (coveredDistance(labelHubs[vertex], labelDistances[vertex], labelSizes[vertex], hubDistance)
+                        <= distTo[vertex]) {
+                    continue;
+                }
+
+                if (labelSizes[vertex] == labelHubs[vertex].length) {
+                    labelHubs[vertex] = Arrays.copyOf(labelHubs[vertex], 2 * labelSizes[vertex]);
+                    labelDistances[vertex] = Arrays.copyOf(labelDistances[vertex], 2 * labelSizes[vertex]);
+                }
+                labelHubs[vertex][labelSizes[vertex]] = rank;
+                labelDistances[vertex][labelSizes[vertex]] = distTo[vertex];
+                labelSizes[vertex]++;
+
+                for (int i = children.begin(vertex); i < children.end(vertex); i++) {
+                    int child = children.target(i);
+                    if (marked[child] != rank + 1) {
+                        marked[child] = rank + 1;
+                        distTo[child] = distTo[vertex] + 1;
+                        queue[tail++] = child;
+                    }
+                }
+            }
+
+            for (int i = 0; i < labelSizes[hub]; i++) {
+                hubDistance[labelHubs[hub][i]] = Integer.MAX_VALUE;
+            }
+        }
+
+        offsets = new int[vertices + 1];
+        for (int v = 0; v < vertices; v++) {
+            offsets[v + 1] = offsets[v] + labelSizes[v];
+        }
+        hubs = new int[offsets[vertices]];
+        distances = new int[offsets[vertices]];
+        for (int v = 0; v < vertices; v++) {
+            System.arraycopy(labelHubs[v], 0, hubs, offsets[v], labelSizes[v]);
+            System.arraycopy(labelDistances[v], 0, distances, offsets[v], labelSizes[v]);
+        }
+    }
+
+    private static int coveredDistance(int[] labelHubs, int[] labelDistances, int size, int[] hubDistance) {
+        int best = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            if (hubDistance[labelHubs[i]] != Integer.MAX_VALUE) {
+                best = Math.min(best, labelDistances[i] + hubDistance[labelHubs[i]]);
+            }
+        }
+        return best;
+    }
+
+    /* Kahn's algorithm from the roots down, which keeps every ancestor ahead of its descendants. Among the
+    vertices that are ready it takes the one heading the most descendants first, since hubs high up in a large
+    subtree prune the later searches the most. The descendant count is estimated by summing over children, which
+    counts a descendant once per path in a DAG but is exact in the tree-shaped parts. */
+    private static int[] rankOrder(CompactDigraph digraph, CompactDigraph children) {
+        int[] topological = ancestorsFirst(digraph);
+        int vertices = digraph.V();
+
+        final long[] descendants = new long[vertices];
+        for (int i = vertices - 1; i >= 0; i--) {
+            int v = topological[i];
+            descendants[v] = 1;
+            for (int j = children.begin(v); j < children.end(v); j++) {
+                descendants[v] = Math.min(Long.MAX_VALUE / 2, descendants[v] + descendants[children.target(j)]);
+            }
+        }
+
+        int[] remaining = new int[vertices];
+        PriorityQueue<Long> ready = new PriorityQueue<Long>();
+        for (int v = 0; v < vertices; v++) {
+            remaining[v] = digraph.outdegree(v);
+            if (remaining[v] == 0) {
+                ready.add(readyKey(v, descendants[v]));
+            }
+        }
+
+        int[] order = new int[vertices];
+        int rank = 0;
+        while (!ready.isEmpty()) {
+            int v = (int) (ready.poll() & 0xFFFFFFFFL);
+            order[rank++] = v;
+            for (int i = children.begin(v); i < children.end(v); i++) {
+                int child = children.target(i);
+                if (--remaining[child] == 0) {
+                    ready.add(readyKey(child, descendants[child]));
+                }
+            }
+        }
+        return order;
+    }
+
+    // orders the priority queue by descendant estimate, largest first, then by vertex
+    private static long readyKey(int v, long descendants) {
+        return (-Math.min(descendants, Integer.MAX_VALUE) << 32) | v;
+    }
+
+    // the rank order depends on the whole digraph, so the labels are built again
+    @Override
+    AncestralIndex update(CompactDigraph digraph, int[] changed) {
+        return new LandmarkLabels(digraph);
+    }
+
+    @Override
+    int size() {
+        return hubs.length;
+    }
+
+    @Override
+    long memoryBytes() {
+        return 4L * (offsets.length + hubs.length + distances.length + vertexOfRank.length);
+    }
+
+    // the labels of each set are merged once, keeping the shortest distance to each hub, and then joined once
+    @Override
+    long query(int[] v, int[] w) {
+        if (v.length == 1 && w.length == 1) {
+            return query(v[0], w[0]);
+        }
+        if (v.length + w.length > MAX_VERTICES) {
+            return UNANSWERED;
+        }
+
+        long[] a = new long[entries(v, offsets)];
+        long[] b = new long[entries(w, offsets)];
+        long found = join(a, union(v, offsets, hubs, distances, a), b, union(w, offsets, hubs, distances, b));
+        return SAP.ancestorOf(found) == -1 ? found : SAP.pack(SAP.lengthOf(found), vertexOfRank[SAP.ancestorOf(found)]);
+    }
+
+    @Override
+    long query(int v, int w) {
+        int length = -1;
+        int ancestor = -1;
+
+        int i = offsets[v];
+        int j = offsets[w];
+        while (i < offsets[v + 1] && j < offsets[w + 1]) {
+            if (hubs[i] < hubs[j]) {
+                i++;
+            } else if (hubs[i] > hubs[j]) {
+                j++;
+            } else {
+                int distance = distances[i] + distances[j];
+                if (length == -1 || distance < length) {
+                    length = distance;
+                    ancestor = vertexOfRank[hubs[i]];
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return SAP.pack(length, ancestor);
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Breadth-first search outward from a set of synsets that visits every other synset in order of its shortest
+ * ancestral path distance to them, for WordNet.nearest().
+ * <p/>
+ * A shortest ancestral path goes up from a source to the common ancestor and then down to the other synset, so
+ * the search keeps two frontiers: one that climbs hypernym edges and one that descends hyponym edges. Every
+ * synset the climbing frontier reaches also joins the descending one at the same distance. The descending
+ * frontier of level d then holds exactly the synsets at distance d that were not reached before, and the search
+ * returns as soon as a level supplies the last noun needed, before expanding the next one, so it only visits
+ * that neighborhood.
+ */
+final class NearestNouns {
+
+    private NearestNouns() {
+    }
+
+    /* The k nouns closest to the sources, the excluded noun left out, ordered by distance and alphabetically
+    among equal distances. Fewer are returned if the sources reach fewer nouns. */
+    static List<String> nearest(CompactDigraph hypernyms, CompactDigraph hyponyms, SynsetNames names,
+                                Iterable<Integer> sources, String excluded, int k) {
+        List<String> nearest = new ArrayList<String>();
+        Set<String> found = new HashSet<String>();
+        found.add(excluded);
+
+        Set<Integer> climbed = new HashSet<Integer>();
+        Set<Integer> descended = new HashSet<Integer>();
+        List<Integer> climbing = new ArrayList<Integer>();
+        List<Integer> descending = new ArrayList<Integer>();
+        for (int source : sources) {
+            if (climbed.add(source)) {
+                climbing.add(source);
+            }
+            if (descended.add(source)) {
+                descending.add(source);
+            }
+        }
+
+        while (nearest.size() < k && !descending.isEmpty()) {
+            List<String> level = new ArrayList<String>();
+            for (int synset : descending) {
+                for (String noun : names.nouns(synset)) {
+                    if (found.add(noun)) {
+                        level.add(noun);
+                    }
+                }
+            }
+            Collections.sort(level);
+            nearest.addAll(level.subList(0, Math.min(level.size(), k - nearest.size())));
+            if (nearest.size() == k) {
+                return nearest;
+            }
+
+            List<Integer> nextClimbing = new ArrayList<Integer>();
+            List<Integer> nextDescending = new ArrayList<Integer>();
+            for (int synset : climbing) {
+                for (int edge = hypernyms.begin(synset); edge < hypernyms.end(synset); edge++) {
+                    int hypernym = hypernyms.target(edge);
+                    if (climbed.add(hypernym)) {
+                        nextClimbing.add(hypernym);
+                    }
+                    if (descended.add(hypernym)) {
+                        nextDescending.add(hypernym);
+                    }
+                }
+            }
+            for (int synset : descending) {
+                for (int edge = hyponyms.begin(synset); edge < hyponyms.end(synset); edge++) {
+                    int hyponym = hyponyms.target(edge);
+                    if (descended.add(hyponym)) {
+                        nextDescending.add(hyponym);
+                    }
+                }
+            }
+            climbing = nextClimbing;
+            descending = nextDescending;
+        }
+
+        return nearest;
+    }
+}
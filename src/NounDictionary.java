@@ -0,0 +1,441 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Sorted string table mapping each WordNet noun to the ids of its synsets, kept outside the Java heap.
+ * <p/>
+ * Everything lives in one ByteBuffer: either a direct buffer filled when WordNet is built from the text files,
+ * or a slice of a memory-mapped snapshot. Layout, ints big-endian: the noun count n; n + 1 offsets of the nouns'
+ * UTF-8 bytes; n + 1 offsets of their synset ids; the synset ids; the UTF-8 bytes of all nouns, sorted by
+ * unsigned byte order. A lookup is a binary search over the bytes, so the nouns never exist as Strings unless
+ * a caller asks for them. Only absolute reads are used, so the buffer can be shared between threads.
+ */
+final class NounDictionary {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* Unicode code point order, which is the unsigned byte order of the UTF-8 encodings. It only differs from
+    String.compareTo when a surrogate is compared with a char from U+E000 up, which has to sort before it, so
+    the slower comparator is only used when some noun contains a surrogate. */
+    private static final Comparator<String> CODE_POINT_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            for (int i = 0; i < a.length() && i < b.length(); i++) {
+                char x = a.charAt(i);
+                char y = b.charAt(i);
+                if (x != y) {
+                    return codePointRank(x) - codePointRank(y);
+                }
+            }
+            return a.length() - b.length();
+        }
+
+        private int codePointRank(char c) {
+            if (c >= '\uE000') {
+                return c - 0x800;
+            } else if (c >= '\uD800') {
+                return c + 0x2000;
+            }
+            return c;
+        }
+    };
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int idOffsetsStart;
+    private final int idsStart;
+    private final int bytesStart;
+
+    // the synset ids of one noun, read straight from the buffer
+    private final class SynsetIds extends AbstractList<Integer> implements RandomAccess {
+        private final int from;
+        private final int size;
+
+        private SynsetIds(int from, int size) {
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        public Integer get(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException();
+            }
+            return buffer.getInt(idsStart + 4 * (from + i));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // wraps a buffer in the layout above, as written by writeTo()
+    NounDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        size = buffer.getInt(0);
+        idOffsetsStart = 4 + 4 * (size + 1);
+        idsStart = idOffsetsStart + 4 * (size + 1);
+        bytesStart = idsStart + 4 * buffer.getInt(idOffsetsStart + 4 * size);
+    }
+
+    // builds the table in a direct buffer from the nouns of each synset, indexed by synset id
+    static NounDictionary build(String[][] synsetNouns) {
+        Map<String, int[]> ids = new HashMap<String, int[]>();
+        int idCount = 0;
+        for (int id = 0; id < synsetNouns.length; id++) {
+            for (String noun : synsetNouns[id]) {
+                int[] nounIds = ids.get(noun);
+                nounIds = nounIds == null ? new int[1] : Arrays.copyOf(nounIds, nounIds.length + 1);
+                nounIds[nounIds.length - 1] = id;
+                ids.put(noun, nounIds);
+                idCount++;
+            }
+        }
+
+        String[] nouns = ids.keySet().toArray(new String[ids.size()]);
+        if (hasSurrogates(nouns)) {
+            Arrays.sort(nouns, CODE_POINT_ORDER);
+        } else {
+            Arrays.sort(nouns);
+        }
+
+        int count = nouns.length;
+        byte[][] bytes = new byte[count][];
+        int[] byteOffsets = new int[count + 1];
+        int[] idOffsets = new int[count + 1];
+        int[] allIds = new int[idCount];
+        for (int i = 0; i < count; i++) {
+            bytes[i] = nouns[i].getBytes(UTF_8);
+            byteOffsets[i + 1] = byteOffsets[i] + bytes[i].length;
+            int[] nounIds = ids.get(nouns[i]);
+            System.arraycopy(nounIds, 0, allIds, idOffsets[i], nounIds.length);
+            idOffsets[i + 1] = idOffsets[i] + nounIds.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 + 8 * (count + 1) + 4 * idCount + byteOffsets[count]);
+        buffer.putInt(count);
+        buffer.asIntBuffer().put(byteOffsets).put(idOffsets).put(allIds);
+        buffer.position(4 + 8 * (count + 1) + 4 * idCount);
+        for (byte[] noun : bytes) {
+            buffer.put(noun);
+        }
+        buffer.clear();
+
+        return new NounDictionary(buffer);
+    }
+
+    /* A new table that also holds the nouns of the added synsets, which get the ids firstId, firstId + 1, ...
+    The added nouns are sorted on their own and binary searched in this table; the nouns between them are copied
+    in bulk as bytes and ids, without being decoded or compared. */
+    NounDictionary withSynsets(String[][] added, int firstId) {
+        NounDictionary addition = build(added);
+        int addedSize = addition.size();
+        int[] insertAt = new int[addedSize];
+        boolean[] existing = new boolean[addedSize];
+        for (int j = 0; j < addedSize; j++) {
+            byte[] key = addition.bytes(j);
+            int low = j == 0 ? 0 : insertAt[j - 1];
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareTo(middle, key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            insertAt[j] = low;
+            existing[j] = low < size && compareTo(low, key) == 0;
+        }
+
+        int[] oldByteOffsets = ints(4, size + 1);
+        int[] oldIdOffsets = ints(idOffsetsStart, size + 1);
+        int[] oldIds = ints(idsStart, oldIdOffsets[size]);
+        byte[] oldBytes = new byte[oldByteOffsets[size]];
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.position(bytesStart);
+        bytes.get(oldBytes);
+
+        int count = size;
+        for (boolean found : existing) {
+            count += found ? 0 : 1;
+        }
+        int[] byteOffsets = new int[count + 1];
+        int[] idOffsets = new int[count + 1];
+        int[] allIds = new int[oldIds.length + addition.idCount()];
+        byte[] allBytes = new byte[oldBytes.length + addition.byteSize() - addition.bytesStart];
+
+        int k = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < addedSize) {
+            boolean fromThis = i < size && (j == addedSize || insertAt[j] > i || existing[j]);
+            boolean fromAddition = j < addedSize && insertAt[j] == i;
+            int nounBytes = byteOffsets[k];
+            int ids = idOffsets[k];
+            if (fromThis) {
+                int length = oldByteOffsets[i + 1] - oldByteOffsets[i];
+                System.arraycopy(oldBytes, oldByteOffsets[i], allBytes, nounBytes, length);
+                nounBytes += length;
+                length = oldIdOffsets[i + 1] - oldIdOffsets[i];
+                System.arraycopy(oldIds, oldIdOffsets[i], allIds, ids, length);
+                ids += length;
+                i++;
+            }
+            if (fromAddition) {
+                if (!fromThis) {
+                    byte[] noun = addition.bytes(j);
+                    System.arraycopy(noun, 0, allBytes, nounBytes, noun.length);
+                    nounBytes += noun.length;
+                }
+                for (int id : addition.synsets(j)) {
+                    allIds[ids++] = firstId + id;
+                }
+                j++;
+            }
+            byteOffsets[k + 1] = nounBytes;
+            idOffsets[k + 1] = ids;
+            k++;
+        }
+
+        ByteBuffer merged = ByteBuffer.allocateDirect(4 + 8 * (count + 1) + 4 * allIds.length + byteOffsets[count]);
+        merged.putInt(count);
+        merged.asIntBuffer().put(byteOffsets).put(idOffsets).put(allIds);
+        merged.position(4 + 8 * (count + 1) + 4 * allIds.length);
+        merged.put(allBytes, 0, byteOffsets[count]);
+        merged.clear();
+
+        return new NounDictionary(merged);
+    }
+
+    // count ints read in bulk from the given byte position of the buffer
+    private int[] ints(int position, int count) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position);
+        int[] values = new int[count];
+        slice.asIntBuffer().get(values);
+        return values;
+    }
+
+    // number of synset ids of all nouns
+    private int idCount() {
+        return buffer.getInt(idOffsetsStart + 4 * size);
+    }
+
+    private static boolean hasSurrogates(String[] nouns) {
+        for (String noun : nouns) {
+            for (int i = 0; i < noun.length(); i++) {
+                if (Character.isSurrogate(noun.charAt(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // index of the noun in sorted order; -1 if it is not in the dictionary
+    int find(String noun) {
+        byte[] key = noun.getBytes(UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareTo(middle, key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // compares the noun at the index with the key, in unsigned byte order
+    private int compareTo(int index, byte[] key) {
+        int start = bytesStart + buffer.getInt(4 + 4 * index);
+        int length = buffer.getInt(4 + 4 * (index + 1)) - buffer.getInt(4 + 4 * index);
+        for (int i = 0; i < length && i < key.length; i++) {
+            int difference = (buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    // the UTF-8 bytes of the noun at the index
+    private byte[] bytes(int index) {
+        int start = bytesStart + buffer.getInt(4 + 4 * index);
+        byte[] bytes = new byte[buffer.getInt(4 + 4 * (index + 1)) - buffer.getInt(4 + 4 * index)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return bytes;
+    }
+
+    // the noun at the index, decoded into a new String
+    String noun(int index) {
+        return new String(bytes(index), UTF_8);
+    }
+
+    // the ids of the synsets the noun at the index belongs to
+    List<Integer> synsets(int index) {
+        int from = buffer.getInt(idOffsetsStart + 4 * index);
+        return new SynsetIds(from, buffer.getInt(idOffsetsStart + 4 * (index + 1)) - from);
+    }
+
+    // every noun in sorted order, each decoded only when the iteration reaches it
+    Iterable<String> nouns() {
+        return new NounRange(0, new byte[0], null, size);
+    }
+
+    // at most limit nouns starting with the prefix, in sorted order and decoded lazily
+    Iterable<String> nounsWithPrefix(String prefix, int limit) {
+        byte[] key = prefix.getBytes(UTF_8);
+        return new NounRange(lowerBound(key), key, null, limit);
+    }
+
+    /* At most limit nouns matching the pattern, where '*' stands for any run of characters and '?' for any one,
+    in sorted order. Only the nouns starting with the pattern's literal prefix, up to the first wildcard, are
+    looked at, so a pattern that starts with a wildcard scans the whole dictionary. */
+    Iterable<String> nounsMatching(String pattern, int limit) {
+        int wildcard = 0;
+        while (wildcard < pattern.length() && pattern.charAt(wildcard) != '*' && pattern.charAt(wildcard) != '?') {
+            wildcard++;
+        }
+        byte[] key = pattern.substring(0, wildcard).getBytes(UTF_8);
+        return new NounRange(lowerBound(key), key, pattern, limit);
+    }
+
+    // index of the first noun not before the key in sorted order; size if there is none
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareTo(middle, key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private boolean startsWith(int index, byte[] prefix) {
+        int start = bytesStart + buffer.getInt(4 + 4 * index);
+        if (buffer.getInt(4 + 4 * (index + 1)) - buffer.getInt(4 + 4 * index) < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // greedy wildcard matching that backtracks only to the last '*'
+    private static boolean matches(String noun, String pattern) {
+        int n = 0;
+        int p = 0;
+        int star = -1;
+        int starMatch = 0;
+        while (n < noun.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == noun.charAt(n))) {
+                n++;
+                p++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                starMatch = n;
+            } else if (star != -1) {
+                p = star + 1;
+                n = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /* The nouns from an index on that start with a prefix and, if there is a pattern, match it, up to a limit.
+    Each iterator looks ahead for the next match only when asked for it. */
+    private final class NounRange implements Iterable<String> {
+        private final int from;
+        private final byte[] prefix;
+        private final String pattern;
+        private final int limit;
+
+        private NounRange(int from, byte[] prefix, String pattern, int limit) {
+            this.from = from;
+            this.prefix = prefix;
+            this.pattern = pattern;
+            this.limit = limit;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int index = from;
+                private int returned;
+                private String next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && returned < limit && index < size && startsWith(index, prefix)) {
+                        String noun = noun(index++);
+                        if (pattern == null || matches(noun, pattern)) {
+                            next = noun;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    String noun = next;
+                    next = null;
+                    returned++;
+                    return noun;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    int byteSize() {
+        return buffer.limit();
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        WordNetSnapshot.writeBuffer(buffer, out);
+    }
+}
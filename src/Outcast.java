@@ -1,7 +1,3 @@
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * User: outzider
  * Date: 11/15/13
@@ -11,43 +7,120 @@ public class Outcast {
 
     private final WordNet wordNet;
 
-    private final class NounDistance implements Comparable<NounDistance> {
-        private final String noun;
-        private final int distance;
+    // constructor takes a WordNet object
+    public Outcast(WordNet wordnet) {
+        this.wordNet = wordnet;
+    }
 
-        private NounDistance(String inNoun, int inDistance) {
-            this.noun = inNoun;
-            this.distance = inDistance;
+    /* Given an array of WordNet nouns, return an outcast: the noun with the largest sum of distances to the
+    others, the first one on a tie. Each noun's ancestors are searched once, and the distance of every unordered
+    pair is a merge-join of two of those, instead of a full SAP query per ordered pair. */
+    public String outcast(String[] nouns) {
+        return nouns[largest(scores(nouns))];
+    }
+
+    // the sum of distances from each noun to all the others, in the order of the nouns
+    public int[] scores(String[] nouns) {
+        long[][] ancestors = new long[nouns.length][];
+        for (int i = 0; i < nouns.length; i++) {
+            ancestors[i] = wordNet.ancestors(nouns[i]);
         }
+        return sums(ancestors);
+    }
 
-        private String getNoun() {
-            return noun;
+    // the k nouns with the largest scores, largest first and in input order on a tie
+    public String[] topOutcasts(String[] nouns, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
         }
 
-        @Override
-        public int compareTo(NounDistance nounDistance) {
-            return Integer.valueOf(nounDistance.distance).compareTo(distance);
+        int[] top = largest(scores(nouns), Math.min(k, nouns.length));
+        String[] outcasts = new String[top.length];
+        for (int i = 0; i < top.length; i++) {
+            outcasts[i] = nouns[top[i]];
         }
+        return outcasts;
     }
 
-    // constructor takes a WordNet object
-    public Outcast(WordNet wordnet) {
-        this.wordNet = wordnet;
+    // the sum of distances from each noun to all the others, given the nouns' WordNet.ancestors()
+    static int[] sums(long[][] ancestors) {
+        int[] sums = new int[ancestors.length];
+        for (int i = 0; i < ancestors.length; i++) {
+            for (int j = i + 1; j < ancestors.length; j++) {
+                int distance = DistanceMatrix.distance(ancestors[i], ancestors[j]);
+                sums[i] += distance;
+                sums[j] += distance;
+            }
+        }
+        return sums;
     }
 
-    // given an array of WordNet nouns, return an outcast
-    public String outcast(String[] nouns) {
-        List<NounDistance> nounDistances = new ArrayList<NounDistance>();
-        for (int i = 0; i < nouns.length; i++) {
-            int nounSum = 0;
-            for (int j = 0; j < nouns.length; j++) {
-                nounSum = nounSum + wordNet.distance(nouns[i], nouns[j]);
+    // index of the first largest sum
+    static int largest(int[] sums) {
+        int largest = 0;
+        for (int i = 1; i < sums.length; i++) {
+            if (sums[i] > sums[largest]) {
+                largest = i;
             }
-            nounDistances.add(new NounDistance(nouns[i], nounSum));
         }
-        Collections.sort(nounDistances);
+        return largest;
+    }
+
+    /* Indexes of the k largest sums, largest first and the lower index first on a tie. A min-heap of the best k
+    seen so far replaces sorting all of them: n log k comparisons instead of n log n, on ints only. */
+    static int[] largest(int[] sums, int k) {
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i = 0; i < sums.length && k > 0; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, sums);
+            } else if (ranksAbove(i, heap[0], sums)) {
+                heap[0] = i;
+                siftDown(heap, size, sums);
+            }
+        }
+
+        // popping the minimum fills the result from the back
+        int[] top = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            top[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, sums);
+        }
+        return top;
+    }
+
+    private static boolean ranksAbove(int i, int j, int[] sums) {
+        return sums[i] > sums[j] || sums[i] == sums[j] && i < j;
+    }
+
+    private static void siftUp(int[] heap, int child, int[] sums) {
+        while (child > 0 && ranksAbove(heap[(child - 1) / 2], heap[child], sums)) {
+            swap(heap, child, (child - 1) / 2);
+            child = (child - 1) / 2;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, int[] sums) {
+        int parent = 0;
+        while (2 * parent + 1 < size) {
+            int child = 2 * parent + 1;
+            if (child + 1 < size && ranksAbove(heap[child], heap[child + 1], sums)) {
+                child++;
+            }
+            if (!ranksAbove(heap[parent], heap[child], sums)) {
+                break;
+            }
+            swap(heap, parent, child);
+            parent = child;
+        }
+    }
 
-        return nounDistances.get(0).getNoun();
+    private static void swap(int[] heap, int i, int j) {
+        int swapped = heap[i];
+        heap[i] = heap[j];
+        heap[j] = swapped;
     }
 
     // for unit testing of this class (such as the one below)
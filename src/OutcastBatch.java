@@ -0,0 +1,195 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the outcasts of a stream of noun lists, evaluating several lists at once on a thread pool.
+ * <p/>
+ * Lists are read from the iterator only as fast as they are evaluated, at most a few per thread ahead of the
+ * oldest unfinished one, and the results are handed to the listener in input order as soon as they are ready,
+ * so any number of lists runs in bounded memory. The ancestors of each noun, from which Outcast computes its
+ * distances, are kept in an LRU cache shared by all lists, so a noun that recurs across lists is searched only
+ * once. Counters for lists, nouns, time spent and cache use accumulate over every run.
+ */
+public final class OutcastBatch {
+
+    private static final int LISTS_AHEAD_PER_THREAD = 4;
+
+    // receives the outcast of every list, in input order, on the thread that called run()
+    public interface Listener {
+        void outcast(long index, String[] nouns, String outcast);
+    }
+
+    private final WordNet wordNet;
+    private final ExecutorService executor;
+    private final int window;
+    private final Map<String, long[]> ancestors;
+
+    private long hits;
+    private long misses;
+    private long lists;
+    private long nouns;
+    private long nanos;
+
+    /* Evaluates lists on the given pool, which the caller keeps ownership of, a few per thread it runs at once,
+    and caches the ancestors of the cacheSize most recently used nouns. */
+    public OutcastBatch(WordNet wordNet, ExecutorService executor, final int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cacheSize must be positive");
+        }
+
+        this.wordNet = wordNet;
+        this.executor = executor;
+        window = LISTS_AHEAD_PER_THREAD * Futures.threads(executor);
+        ancestors = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    // evaluates every list of the iterator and passes each outcast to the listener; returns the number of lists
+    public long run(Iterator<String[]> nounLists, Listener listener) {
+        long start = System.nanoTime();
+        Queue<Future<String>> pending = new ArrayDeque<Future<String>>();
+        Queue<String[]> pendingNouns = new ArrayDeque<String[]>();
+        long index = 0;
+        long nounCount = 0;
+        try {
+            while (nounLists.hasNext() || !pending.isEmpty()) {
+                while (nounLists.hasNext() && pending.size() < window) {
+                    final String[] nouns = nounLists.next();
+                    nounCount += nouns.length;
+                    pendingNouns.add(nouns);
+                    pending.add(executor.submit(new Callable<String>() {
+                        public String call() {
+                            return outcast(nouns);
+                        }
+                    }));
+                }
+
+                String outcast = Futures.await(pending.remove());
+                listener.outcast(index++, pendingNouns.remove(), outcast);
+            }
+        } finally {
+            for (Future<String> future : pending) {
+                future.cancel(false);
+            }
+            synchronized (this) {
+                lists += index;
+                nouns += nounCount;
+                nanos += System.nanoTime() - start;
+            }
+        }
+        return index;
+    }
+
+    private String outcast(String[] nouns) {
+        long[][] nounAncestors = new long[nouns.length][];
+        for (int i = 0; i < nouns.length; i++) {
+            nounAncestors[i] = ancestors(nouns[i]);
+        }
+        return nouns[Outcast.largest(Outcast.sums(nounAncestors))];
+    }
+
+    // searched outside the lock, so two threads may search the same new noun; both get equal arrays
+    private long[] ancestors(String noun) {
+        synchronized (ancestors) {
+            long[] cached = ancestors.get(noun);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        long[] searched = wordNet.ancestors(noun);
+        synchronized (ancestors) {
+            ancestors.put(noun, searched);
+        }
+        return searched;
+    }
+
+    public synchronized long lists() {
+        return lists;
+    }
+
+    public synchronized long nouns() {
+        return nouns;
+    }
+
+    // wall-clock time spent in run(), in milliseconds
+    public synchronized long elapsedMillis() {
+        return nanos / 1000000;
+    }
+
+    public synchronized double listsPerSecond() {
+        return nanos == 0 ? 0 : lists * 1e9 / nanos;
+    }
+
+    public long cacheHits() {
+        synchronized (ancestors) {
+            return hits;
+        }
+    }
+
+    public long cacheMisses() {
+        synchronized (ancestors) {
+            return misses;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d lists, %d nouns in %d ms (%.0f lists/s), cache %d hits, %d misses", lists(), nouns(),
+                elapsedMillis(), listsPerSecond(), cacheHits(), cacheMisses());
+    }
+
+    // the outcast of each file given after the synsets and hypernyms files, on as many threads as processors
+    public static void main(String[] args) {
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        final String[] files = Arrays.copyOfRange(args, 2, args.length);
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            OutcastBatch batch = new OutcastBatch(wordnet, executor, 100000);
+            batch.run(new Iterator<String[]>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < files.length;
+                }
+
+                @Override
+                public String[] next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return new In(files[next++]).readAllStrings();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            }, new Listener() {
+                @Override
+                public void outcast(long index, String[] nouns, String outcast) {
+                    StdOut.println(files[(int) index] + ": " + outcast);
+                }
+            });
+            StdOut.println(batch);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
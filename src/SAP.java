@@ -1,77 +1,219 @@
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * User: outzider
  * Date: 11/9/13
  * Time: 6:28 PM
+ * <p/>
+ * A SAP is safe to query from any number of threads at once. The digraph is copied and never changed after
+ * construction, each query borrows its scratch buffers from a small pool, and the optional cache is synchronized.
  */
 public class SAP {
 
-    private final Digraph digraph;
+    private static final int BATCH_SLICE = 256;
 
-    private final class Ancestor implements Comparable<Ancestor> {
-        private final int vertex;
-        private final int totalDistance;
+    // how queries are answered
+    public enum Backend {
+        // bidirectional BFS over the digraph; works for any digraph
+        BREADTH_FIRST,
+        // merge-join of precomputed ancestor sets; the digraph must be a DAG
+        ANCESTOR_INDEX,
+        // merge-join of pruned landmark labels, smaller than the ancestor sets; the digraph must be a DAG
+        LANDMARK_LABELS,
+        // constant-time lowest common ancestors within the single-hypernym trees, BFS between them; DAG only
+        TREE_LCA
+    }
 
-        private Ancestor(int inVertex, int vDistance, int wDistance) {
-            this.vertex = inVertex;
-            this.totalDistance = vDistance + wDistance;
-        }
+    private final CompactDigraph digraph;
+    private final AtomicReferenceArray<AncestralSearch> searches;
+    private final AncestralIndex index;
+    private final long indexBuildMillis;
+    private final SAPCache cache;
+
+    // created on first use, so that a SAP that never runs a batch does not start any threads
+    static final class BatchPool {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    /* Answers a slice of a batch. Queries are sorted so that those sharing a v endpoint are adjacent; each run of
+    them prepares the BFS from that endpoint once and then only searches from the w endpoints. */
+    private final class BatchLengths extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        private int getVertex() {
-            return vertex;
+        private final int[] vertexV;
+        private final int[] vertexW;
+        private final List<? extends Iterable<Integer>> setV;
+        private final List<? extends Iterable<Integer>> setW;
+        private final long[] order;
+        private final int[] lengths;
+        private final int from;
+        private final int to;
+
+        private BatchLengths(int[] vertexV, int[] vertexW, List<? extends Iterable<Integer>> setV,
+                             List<? extends Iterable<Integer>> setW, long[] order, int[] lengths, int from, int to) {
+            this.vertexV = vertexV;
+            this.vertexW = vertexW;
+            this.setV = setV;
+            this.setW = setW;
+            this.order = order;
+            this.lengths = lengths;
+            this.from = from;
+            this.to = to;
         }
 
         @Override
-        public int compareTo(Ancestor o) {
-            return Integer.valueOf(totalDistance).compareTo(o.totalDistance);
+        protected void compute() {
+            if (to - from <= BATCH_SLICE) {
+                answerSlice();
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchLengths(vertexV, vertexW, setV, setW, order, lengths, from, middle),
+                        new BatchLengths(vertexV, vertexW, setV, setW, order, lengths, middle, to));
+            }
+        }
+
+        private void answerSlice() {
+            // an index answers each query on its own, falling back to a search for those it does not cover
+            if (index != null) {
+                for (int i = from; i < to; i++) {
+                    int query = queryAt(i);
+                    if (setV == null) {
+                        lengths[query] = lengthOf(search(vertexV[query], vertexW[query]));
+                    } else {
+                        lengths[query] = lengthOf(search(setV.get(query), setW.get(query)));
+                    }
+                }
+                return;
+            }
+
+            AncestralSearch search = acquireSearch();
+            try {
+                for (int i = from; i < to; i++) {
+                    int query = queryAt(i);
+                    boolean sharesV = i + 1 < to && groupAt(i + 1) == groupAt(i);
+                    boolean prepared = i > from && groupAt(i - 1) == groupAt(i);
+
+                    if (!sharesV && !prepared) {
+                        if (setV == null) {
+                            search.search(vertexV[query], vertexW[query]);
+                        } else {
+                            search.search(setV.get(query), setW.get(query));
+                        }
+                    } else {
+                        if (!prepared) {
+                            if (setV == null) {
+                                search.prepare(vertexV[query]);
+                            } else {
+                                search.prepare(setV.get(query));
+                            }
+                        }
+                        if (setW == null) {
+                            search.searchPrepared(vertexW[query]);
+                        } else {
+                            search.searchPrepared(setW.get(query));
+                        }
+                    }
+                    lengths[query] = search.length();
+                }
+            } finally {
+                releaseSearch(search);
+            }
+        }
+
+        private int queryAt(int i) {
+            return (int) order[i];
+        }
+
+        private int groupAt(int i) {
+            return (int) (order[i] >>> 32);
         }
     }
 
     // constructor takes a digraph (not necessarily a DAG)
     public SAP(Digraph G) {
-        digraph = new Digraph(G);
+        this(G, Backend.BREADTH_FIRST, 0);
     }
 
-    // length of shortest ancestral path between v and w; -1 if no such path
-    public int length(int v, int w) {
-        illegalInputParameterCheck(v, w);
+    // as above, but remembers the results of the cacheSize most recently used queries; 0 disables the cache
+    public SAP(Digraph G, int cacheSize) {
+        this(G, Backend.BREADTH_FIRST, cacheSize);
+    }
 
-        int ancestor = ancestor(v, w);
+    // as above, answering queries with the given backend
+    public SAP(Digraph G, Backend backend, int cacheSize) {
+        this(new CompactDigraph(G), backend, cacheSize);
+    }
 
-        if (ancestor == -1) {
-            return -1;
+    // takes ownership of an already compact digraph, which must not be changed afterwards
+    SAP(CompactDigraph G, Backend backend, int cacheSize) {
+        digraph = G;
+        searches = new AtomicReferenceArray<AncestralSearch>(2 * Runtime.getRuntime().availableProcessors());
+        long buildStart = System.currentTimeMillis();
+        if (backend == Backend.ANCESTOR_INDEX) {
+            index = new AncestorIndex(digraph);
+        } else if (backend == Backend.LANDMARK_LABELS) {
+            index = new LandmarkLabels(digraph);
+        } else if (backend == Backend.TREE_LCA) {
+            index = new TreeLCA(digraph);
         } else {
-            BreadthFirstDirectedPaths vBreadthFirst = new BreadthFirstDirectedPaths(digraph, v);
-            BreadthFirstDirectedPaths wBreadthFirst = new BreadthFirstDirectedPaths(digraph, w);
-
-            return vBreadthFirst.distTo(ancestor) + wBreadthFirst.distTo(ancestor);
+            index = null;
         }
+        indexBuildMillis = System.currentTimeMillis() - buildStart;
+        cache = cacheSize > 0 ? new SAPCache(cacheSize) : null;
     }
 
-    // a common ancestor of v and w that participates in a shortest ancestral path; -1 if no such path
-    public int ancestor(int v, int w) {
-        illegalInputParameterCheck(v, w);
+    private SAP(CompactDigraph G, AncestralIndex index, long indexBuildMillis, SAPCache cache) {
+        digraph = G;
+        searches = new AtomicReferenceArray<AncestralSearch>(2 * Runtime.getRuntime().availableProcessors());
+        this.index = index;
+        this.indexBuildMillis = indexBuildMillis;
+        this.cache = cache;
+    }
 
-        List<Ancestor> ancestors = new ArrayList<Ancestor>();
-        BreadthFirstDirectedPaths vBreadthFirst = new BreadthFirstDirectedPaths(digraph, v);
-        BreadthFirstDirectedPaths wBreadthFirst = new BreadthFirstDirectedPaths(digraph, w);
+    /* A SAP with the same backend and cache size for a digraph grown from this one's by adding vertices and the
+    edges from[i] -> to[i]. Only the new vertices and the descendants of old vertices that gained an edge can
+    have new ancestors, so only their part of the index is rebuilt and only cached results involving them are
+    dropped. This SAP is left unchanged. */
+    SAP update(CompactDigraph grown, int[] from) {
+        if (index == null && cache == null) {
+            return new SAP(grown, null, 0, null);
+        }
 
-        for (int i = 0; i < digraph.V(); i++) {
-            if (vBreadthFirst.hasPathTo(i) && wBreadthFirst.hasPathTo(i)) {
-                ancestors.add(new Ancestor(i, vBreadthFirst.distTo(i), wBreadthFirst.distTo(i)));
+        // the new vertices and the old ones that gained an edge, whose descendants are all the changed vertices
+        int[] sources = new int[from.length + grown.V() - digraph.V()];
+        int sourceCount = 0;
+        for (int v : from) {
+            if (v < digraph.V()) {
+                sources[sourceCount++] = v;
             }
         }
-
-        if (ancestors.size() < 1) {
-            return -1;
-        } else {
-            Collections.sort(ancestors);
-            return ancestors.get(0).getVertex();
+        for (int v = digraph.V(); v < grown.V(); v++) {
+            sources[sourceCount++] = v;
         }
+        int[] changed = grown.reverse().reachableFrom(Arrays.copyOf(sources, sourceCount));
+        Arrays.sort(changed);
 
+        long buildStart = System.currentTimeMillis();
+        AncestralIndex grownIndex = index == null ? null : index.update(grown, changed);
+        long buildMillis = System.currentTimeMillis() - buildStart;
+        return new SAP(grown, grownIndex, buildMillis, cache == null ? null : cache.without(changed));
+    }
+
+    // length of shortest ancestral path between v and w; -1 if no such path
+    public int length(int v, int w) {
+        return lengthOf(find(v, w));
+    }
+
+    // a common ancestor of v and w that participates in a shortest ancestral path; -1 if no such path
+    public int ancestor(int v, int w) {
+        return ancestorOf(find(v, w));
     }
 
     private void illegalInputParameterCheck(int v, int w) {
@@ -98,40 +240,376 @@ public class SAP {
 
     // length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
     public int length(Iterable<Integer> v, Iterable<Integer> w) {
+        return lengthOf(find(v, w));
+    }
+
+    // a common ancestor that participates in shortest ancestral path; -1 if no such path
+    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+        return ancestorOf(find(v, w));
+    }
+
+    // length and ancestor of the shortest ancestral path between v and w, computed by a single search
+    public AncestralPath query(int v, int w) {
+        long found = find(v, w);
+        return AncestralPath.of(lengthOf(found), ancestorOf(found));
+    }
+
+    // length and ancestor of the shortest ancestral path between any vertex in v and any vertex in w
+    public AncestralPath query(Iterable<Integer> v, Iterable<Integer> w) {
+        long found = find(v, w);
+        return AncestralPath.of(lengthOf(found), ancestorOf(found));
+    }
+
+    /* As query(v, w), but with a bound on the work: finds no path (hasPath() is false) if the shortest ancestral
+    path is longer than maxLength, or if the search visits more than maxVisits vertices before it is sure of
+    the answer. A query the index backend answers costs no traversal, so only maxLength applies to it. A cached
+    result is used if there is one, and a path that is found is cached as it is the unbounded answer too. */
+    public AncestralPath query(int v, int w, int maxLength, int maxVisits) {
         illegalInputParameterCheck(v, w);
+        checkBounds(maxLength, maxVisits);
+
+        SAPCache.Key key = cache != null ? SAPCache.key(v, w) : null;
+        AncestralPath result = key != null ? cache.get(key) : null;
+        if (result == null) {
+            long found = index != null ? index.query(v, w) : AncestralIndex.UNANSWERED;
+            if (found == AncestralIndex.UNANSWERED) {
+                AncestralSearch search = acquireSearch();
+                try {
+                    search.searchBounded(v, w, maxLength, maxVisits);
+                    found = pack(search.length(), search.ancestor());
+                } finally {
+                    releaseSearch(search);
+                }
+            }
+            result = AncestralPath.of(lengthOf(found), ancestorOf(found));
+            if (key != null && result.hasPath()) {
+                cache.put(key, result);
+            }
+        }
 
-        int ancestor = ancestor(v, w);
+        return result.length() <= maxLength ? result : AncestralPath.of(-1, -1);
+    }
 
-        if (ancestor == -1) {
-            return -1;
-        } else {
-            BreadthFirstDirectedPaths vBreadthFirst = new BreadthFirstDirectedPaths(digraph, v);
-            BreadthFirstDirectedPaths wBreadthFirst = new BreadthFirstDirectedPaths(digraph, w);
+    // as above, for shortest ancestral paths between any vertex in v and any vertex in w
+    public AncestralPath query(Iterable<Integer> v, Iterable<Integer> w, int maxLength, int maxVisits) {
+        illegalInputParameterCheck(v, w);
+        checkBounds(maxLength, maxVisits);
 
-            return vBreadthFirst.distTo(ancestor) + wBreadthFirst.distTo(ancestor);
+        SAPCache.Key key = cache != null ? SAPCache.key(v, w) : null;
+        AncestralPath result = key != null ? cache.get(key) : null;
+        if (result == null) {
+            int[] vertices = index != null ? vertices(v) : null;
+            int[] others = index != null ? vertices(w) : null;
+            long found = index != null ? index.query(vertices, others) : AncestralIndex.UNANSWERED;
+            if (found == AncestralIndex.UNANSWERED) {
+                AncestralSearch search = acquireSearch();
+                try {
+                    search.searchBounded(v, w, maxLength, maxVisits);
+                    found = pack(search.length(), search.ancestor());
+                } finally {
+                    releaseSearch(search);
+                }
+            }
+            result = AncestralPath.of(lengthOf(found), ancestorOf(found));
+            if (key != null && result.hasPath()) {
+                cache.put(key, result);
+            }
         }
+
+        return result.length() <= maxLength ? result : AncestralPath.of(-1, -1);
     }
 
-    // a common ancestor that participates in shortest ancestral path; -1 if no such path
-    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+    private void checkBounds(int maxLength, int maxVisits) {
+        if (maxLength < 0 || maxVisits < 0) {
+            throw new IllegalArgumentException("maxLength and maxVisits must not be negative");
+        }
+    }
+
+    /* Every common ancestor of v and w that participates in a shortest ancestral path, in increasing order;
+    empty if there is no such path. ancestor() returns one of them. The ancestors are collected by a single
+    search that keeps the best length seen and every vertex reaching it; the index backends search too. */
+    public int[] ancestors(int v, int w) {
         illegalInputParameterCheck(v, w);
 
-        List<Ancestor> ancestors = new ArrayList<Ancestor>();
-        BreadthFirstDirectedPaths vBreadthFirst = new BreadthFirstDirectedPaths(digraph, v);
-        BreadthFirstDirectedPaths wBreadthFirst = new BreadthFirstDirectedPaths(digraph, w);
+        AncestralSearch search = acquireSearch();
+        try {
+            search.searchTies(v, w);
+            return search.ties();
+        } finally {
+            releaseSearch(search);
+        }
+    }
+
+    // as above, for shortest ancestral paths between any vertex in v and any vertex in w
+    public int[] ancestors(Iterable<Integer> v, Iterable<Integer> w) {
+        illegalInputParameterCheck(v, w);
 
-        for (int i = 0; i < digraph.V(); i++) {
-            if (vBreadthFirst.hasPathTo(i) && wBreadthFirst.hasPathTo(i)) {
-                ancestors.add(new Ancestor(i, vBreadthFirst.distTo(i), wBreadthFirst.distTo(i)));
+        AncestralSearch search = acquireSearch();
+        try {
+            search.searchTies(v, w);
+            return search.ties();
+        } finally {
+            releaseSearch(search);
+        }
+    }
+
+    /* The vertices of a shortest ancestral path between v and w: from v up to the common ancestor and down to w,
+    so path[0] is v, the last vertex is w and the length is path.length - 1. Empty if there is no such path.
+    The path is read from the parent pointers of the one search that finds it; the index backends do not keep
+    paths, so they search too. Paths are not cached. */
+    public int[] path(int v, int w) {
+        illegalInputParameterCheck(v, w);
+
+        AncestralSearch search = acquireSearch();
+        try {
+            search.search(v, w);
+            return search.path();
+        } finally {
+            releaseSearch(search);
+        }
+    }
+
+    // as above, from the nearest vertex of v to the nearest vertex of w
+    public int[] path(Iterable<Integer> v, Iterable<Integer> w) {
+        illegalInputParameterCheck(v, w);
+
+        AncestralSearch search = acquireSearch();
+        try {
+            search.search(v, w);
+            return search.path();
+        } finally {
+            releaseSearch(search);
+        }
+    }
+
+    /* Queries return length and ancestor packed into one long so that the uncached path does not allocate:
+    the length in the high 32 bits, the ancestor in the low 32 bits. */
+    private long find(int v, int w) {
+        illegalInputParameterCheck(v, w);
+
+        if (cache != null) {
+            SAPCache.Key key = SAPCache.key(v, w);
+            AncestralPath result = cache.get(key);
+            if (result == null) {
+                long found = search(v, w);
+                result = AncestralPath.of(lengthOf(found), ancestorOf(found));
+                cache.put(key, result);
+            }
+            return pack(result.length(), result.ancestor());
+        }
+
+        return search(v, w);
+    }
+
+    private long find(Iterable<Integer> v, Iterable<Integer> w) {
+        illegalInputParameterCheck(v, w);
+
+        if (cache != null) {
+            SAPCache.Key key = SAPCache.key(v, w);
+            AncestralPath result = cache.get(key);
+            if (result == null) {
+                long found = search(v, w);
+                result = AncestralPath.of(lengthOf(found), ancestorOf(found));
+                cache.put(key, result);
+            }
+            return pack(result.length(), result.ancestor());
+        }
+
+        return search(v, w);
+    }
+
+    private long search(int v, int w) {
+        if (index != null) {
+            long found = index.query(v, w);
+            if (found != AncestralIndex.UNANSWERED) {
+                return found;
             }
         }
 
-        if (ancestors.size() < 1) {
-            return -1;
+        AncestralSearch search = acquireSearch();
+        try {
+            search.search(v, w);
+            return pack(search.length(), search.ancestor());
+        } finally {
+            releaseSearch(search);
+        }
+    }
+
+    private long search(Iterable<Integer> v, Iterable<Integer> w) {
+        if (index == null) {
+            AncestralSearch search = acquireSearch();
+            try {
+                search.search(v, w);
+                return pack(search.length(), search.ancestor());
+            } finally {
+                releaseSearch(search);
+            }
+        }
+
+        // the index looks at the sets several times, so they are read once
+        int[] vertices = vertices(v);
+        int[] others = vertices(w);
+        long found = index.query(vertices, others);
+        if (found != AncestralIndex.UNANSWERED) {
+            return found;
+        }
+        AncestralSearch search = acquireSearch();
+        try {
+            search.search(vertices, others);
+            return pack(search.length(), search.ancestor());
+        } finally {
+            releaseSearch(search);
+        }
+    }
+
+    private static int[] vertices(Iterable<Integer> set) {
+        int count = 0;
+        if (set instanceof Collection) {
+            count = ((Collection<?>) set).size();
         } else {
-            Collections.sort(ancestors);
-            return ancestors.get(0).getVertex();
+            for (int ignored : set) {
+                count++;
+            }
+        }
+        int[] vertices = new int[count];
+        int i = 0;
+        for (int vertex : set) {
+            vertices[i++] = vertex;
+        }
+        return vertices;
+    }
+
+    // lengths of the shortest ancestral paths between v[i] and w[i] for every i; -1 where there is no such path
+    public int[] lengths(int[] v, int[] w) {
+        return lengths(v, w, BatchPool.POOL);
+    }
+
+    // as above, running the queries on the given pool
+    public int[] lengths(int[] v, int[] w, ForkJoinPool pool) {
+        checkBatchSize(v.length, w.length);
+        for (int i = 0; i < v.length; i++) {
+            illegalInputParameterCheck(v[i], w[i]);
+        }
+
+        return runBatch(v, w, null, null, batchOrder(v), pool);
+    }
+
+    // lengths of the shortest ancestral paths between the vertex sets v.get(i) and w.get(i) for every i
+    public int[] lengths(List<? extends Iterable<Integer>> v, List<? extends Iterable<Integer>> w) {
+        return lengths(v, w, BatchPool.POOL);
+    }
+
+    // as above, running the queries on the given pool
+    public int[] lengths(List<? extends Iterable<Integer>> v, List<? extends Iterable<Integer>> w,
+                         ForkJoinPool pool) {
+        checkBatchSize(v.size(), w.size());
+        for (int i = 0; i < v.size(); i++) {
+            illegalInputParameterCheck(v.get(i), w.get(i));
         }
+
+        // equal vertex sets (the same noun, for WordNet) share a group
+        Map<Iterable<Integer>, Integer> groups = new HashMap<Iterable<Integer>, Integer>();
+        int[] groupOf = new int[v.size()];
+        for (int i = 0; i < v.size(); i++) {
+            Integer group = groups.get(v.get(i));
+            if (group == null) {
+                group = groups.size();
+                groups.put(v.get(i), group);
+            }
+            groupOf[i] = group;
+        }
+
+        return runBatch(null, null, v, w, batchOrder(groupOf), pool);
+    }
+
+    private void checkBatchSize(int vSize, int wSize) {
+        if (vSize != wSize) {
+            throw new IllegalArgumentException("v and w must hold the same number of queries");
+        }
+    }
+
+    // query indexes sorted by group, each packed as group in the high and index in the low 32 bits
+    private long[] batchOrder(int[] groupOf) {
+        long[] order = new long[groupOf.length];
+        for (int i = 0; i < groupOf.length; i++) {
+            order[i] = ((long) groupOf[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    private int[] runBatch(int[] vertexV, int[] vertexW, List<? extends Iterable<Integer>> setV,
+                           List<? extends Iterable<Integer>> setW, long[] order, ForkJoinPool pool) {
+        int[] lengths = new int[order.length];
+        pool.invoke(new BatchLengths(vertexV, vertexW, setV, setW, order, lengths, 0, order.length));
+        return lengths;
+    }
+
+    /* Scratch buffers are pooled rather than kept per thread, so memory stays proportional to the number of
+    queries actually running at once even when callers use many short-lived threads. The scan starts at a slot
+    picked by the calling thread to keep threads from contending for the same slot. */
+    private AncestralSearch acquireSearch() {
+        int start = slotFor(Thread.currentThread());
+        for (int i = 0; i < searches.length(); i++) {
+            int slot = (start + i) % searches.length();
+            AncestralSearch search = searches.get(slot);
+            if (search != null && searches.compareAndSet(slot, search, null)) {
+                return search;
+            }
+        }
+        return new AncestralSearch(digraph);
+    }
+
+    // returns the buffers to the pool; if every slot is taken they are left to the garbage collector
+    private void releaseSearch(AncestralSearch search) {
+        int start = slotFor(Thread.currentThread());
+        for (int i = 0; i < searches.length(); i++) {
+            int slot = (start + i) % searches.length();
+            if (searches.get(slot) == null && searches.compareAndSet(slot, null, search)) {
+                return;
+            }
+        }
+    }
+
+    private int slotFor(Thread thread) {
+        return (int) (thread.getId() % searches.length());
+    }
+
+    static long pack(int length, int ancestor) {
+        return ((long) length << 32) | (ancestor & 0xFFFFFFFFL);
+    }
+
+    static int lengthOf(long found) {
+        return (int) (found >> 32);
+    }
+
+    static int ancestorOf(long found) {
+        return (int) found;
+    }
+
+    // number of (vertex, ancestor) entries held by the backend's index; 0 for BREADTH_FIRST
+    public int indexSize() {
+        return index == null ? 0 : index.size();
+    }
+
+    // approximate memory used by the backend's index, in bytes; 0 for BREADTH_FIRST
+    public long indexMemoryBytes() {
+        return index == null ? 0 : index.memoryBytes();
+    }
+
+    // time it took to build the backend's index, in milliseconds; 0 for BREADTH_FIRST
+    public long indexBuildMillis() {
+        return index == null ? 0 : indexBuildMillis;
+    }
+
+    // number of queries answered from the cache; 0 if the cache is disabled
+    public long cacheHits() {
+        return cache == null ? 0 : cache.hits();
+    }
+
+    // number of queries that had to be searched because they were not cached; 0 if the cache is disabled
+    public long cacheMisses() {
+        return cache == null ? 0 : cache.misses();
     }
 
     // for unit testing of this class (such as the one below)
@@ -142,9 +620,7 @@ public class SAP {
         while (!StdIn.isEmpty()) {
             int v = StdIn.readInt();
             int w = StdIn.readInt();
-            int length = sap.length(v, w);
-            int ancestor = sap.ancestor(v, w);
-            StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
+            StdOut.println(sap.query(v, w));
         }
     }
-}
\ No newline at end of file
+}
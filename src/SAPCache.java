@@ -0,0 +1,152 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least-recently-used cache of shortest ancestral path results.
+ * <p/>
+ * Keys are symmetric, so a query for (v, w) is answered by an entry stored for (w, v). The vertex set overloads
+ * are canonicalized into sorted arrays without duplicates, so the order in which an Iterable yields its vertices
+ * does not matter either. All access is synchronized, so one cache can be shared by concurrent queries.
+ */
+class SAPCache {
+
+    private final int capacity;
+    private final Map<Key, AncestralPath> entries;
+    private long hits;
+    private long misses;
+
+    static final class Key {
+        private final int[] first;
+        private final int[] second;
+        private final int hash;
+
+        private Key(int[] v, int[] w) {
+            if (compare(v, w) <= 0) {
+                first = v;
+                second = w;
+            } else {
+                first = w;
+                second = v;
+            }
+            hash = 31 * Arrays.hashCode(first) + Arrays.hashCode(second);
+        }
+
+        private static int compare(int[] a, int[] b) {
+            for (int i = 0; i < a.length && i < b.length; i++) {
+                if (a[i] != b[i]) {
+                    return a[i] < b[i] ? -1 : 1;
+                }
+            }
+            return a.length - b.length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Arrays.equals(first, key.first) && Arrays.equals(second, key.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    SAPCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.capacity = capacity;
+
+        entries = new LinkedHashMap<Key, AncestralPath>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, AncestralPath> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // a new cache of the same capacity holding the entries that involve none of the sorted vertices, in LRU order
+    synchronized SAPCache without(int[] vertices) {
+        SAPCache kept = new SAPCache(capacity);
+        for (Map.Entry<Key, AncestralPath> entry : entries.entrySet()) {
+            Key key = entry.getKey();
+            if (!containsAny(key.first, vertices) && !containsAny(key.second, vertices)) {
+                kept.entries.put(key, entry.getValue());
+            }
+        }
+        return kept;
+    }
+
+    private static boolean containsAny(int[] keyVertices, int[] vertices) {
+        for (int vertex : keyVertices) {
+            if (Arrays.binarySearch(vertices, vertex) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Key key(int v, int w) {
+        return new Key(new int[]{v}, new int[]{w});
+    }
+
+    static Key key(Iterable<Integer> v, Iterable<Integer> w) {
+        return new Key(toSortedSet(v), toSortedSet(w));
+    }
+
+    private static int[] toSortedSet(Iterable<Integer> vertices) {
+        int[] sorted = new int[4];
+        int size = 0;
+        for (int vertex : vertices) {
+            if (size == sorted.length) {
+                sorted = Arrays.copyOf(sorted, size * 2);
+            }
+            sorted[size++] = vertex;
+        }
+        Arrays.sort(sorted, 0, size);
+
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    // cached result for the key; null (and counted as a miss) if there is none
+    synchronized AncestralPath get(Key key) {
+        AncestralPath result = entries.get(key);
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    synchronized void put(Key key, AncestralPath result) {
+        entries.put(key, result);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * The name of every synset, its nouns joined by spaces as in the second field of synsets.txt, stored once in a
+ * shared buffer and turned into a String only the first time it is asked for.
+ * <p/>
+ * Layout, ints big-endian: the synset count n; n + 1 offsets of the UTF-8 names; the names. The buffer is a
+ * direct buffer when WordNet is built from the text files, or a slice of a memory-mapped snapshot. Materialized
+ * names are cached, so repeated lookups of the same synset return the same String without allocating. Two threads
+ * may race to materialize the same name; both produce an equal immutable String, so either can win.
+ */
+final class SynsetNames {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int namesStart;
+    private final String[] materialized;
+
+    // wraps a buffer in the layout above, as written by writeTo()
+    SynsetNames(ByteBuffer buffer) {
+        this.buffer = buffer;
+        size = buffer.getInt(0);
+        namesStart = 4 + 4 * (size + 1);
+        materialized = new String[size];
+    }
+
+    // builds the table in a direct buffer from the nouns of each synset, indexed by synset id
+    static SynsetNames build(String[][] synsetNouns) {
+        byte[][] names = new byte[synsetNouns.length][];
+        int[] offsets = new int[synsetNouns.length + 1];
+        StringBuilder builder = new StringBuilder();
+        for (int id = 0; id < synsetNouns.length; id++) {
+            builder.setLength(0);
+            for (int i = 0; i < synsetNouns[id].length; i++) {
+                if (i > 0) {
+                    builder.append(' ');
+                }
+                builder.append(synsetNouns[id][i]);
+            }
+            names[id] = builder.toString().getBytes(UTF_8);
+            offsets[id + 1] = offsets[id] + names[id].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 + 4 * offsets.length + offsets[synsetNouns.length]);
+        buffer.putInt(synsetNouns.length);
+        buffer.asIntBuffer().put(offsets);
+        buffer.position(4 + 4 * offsets.length);
+        for (byte[] name : names) {
+            buffer.put(name);
+        }
+        buffer.clear();
+
+        return new SynsetNames(buffer);
+    }
+
+    // a new table with the names of the added synsets, which get the ids size() .. size() + added.length - 1
+    SynsetNames withSynsets(String[][] added) {
+        SynsetNames names = build(added);
+        int count = size + added.length;
+        int oldBytes = buffer.getInt(4 + 4 * size);
+        int addedBytes = names.buffer.getInt(4 + 4 * added.length);
+
+        int[] offsets = new int[count + 1];
+        slice(buffer, 4, 4 * (size + 1)).asIntBuffer().get(offsets, 0, size + 1);
+        for (int id = 1; id <= added.length; id++) {
+            offsets[size + id] = oldBytes + names.buffer.getInt(4 + 4 * id);
+        }
+
+        ByteBuffer grown = ByteBuffer.allocateDirect(4 + 4 * offsets.length + oldBytes + addedBytes);
+        grown.putInt(count);
+        grown.asIntBuffer().put(offsets);
+        grown.position(4 + 4 * offsets.length);
+        grown.put(slice(buffer, namesStart, oldBytes));
+        grown.put(slice(names.buffer, names.namesStart, addedBytes));
+        grown.clear();
+
+        // names already materialized stay materialized
+        SynsetNames grownNames = new SynsetNames(grown);
+        System.arraycopy(materialized, 0, grownNames.materialized, 0, size);
+        return grownNames;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(start);
+        slice.limit(start + length);
+        return slice;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String name(int id) {
+        String name = materialized[id];
+        if (name == null) {
+            name = decode(id);
+            materialized[id] = name;
+        }
+        return name;
+    }
+
+    /* The nouns of a synset, decoded afresh unless its name is already materialized, for callers that visit many
+    synsets once and should not leave all their names cached. */
+    String[] nouns(int id) {
+        String name = materialized[id];
+        return (name != null ? name : decode(id)).split(" ");
+    }
+
+    private String decode(int id) {
+        int start = buffer.getInt(4 + 4 * id);
+        byte[] bytes = new byte[buffer.getInt(4 + 4 * (id + 1)) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(namesStart + start + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    int byteSize() {
+        return buffer.limit();
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        WordNetSnapshot.writeBuffer(buffer, out);
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Lowest common ancestors in the tree-shaped regions of a DAG, answered in constant time from an Euler tour and
+ * range minima over it.
+ * <p/>
+ * Following the single hypernym of every vertex that has exactly one splits the DAG into trees, each rooted at
+ * a vertex with no or several hypernyms. The ancestors of a vertex are then its chain up to its tree root plus
+ * the ancestors of that root, which all lie above the tree. For two vertices of the same tree every common
+ * ancestor above the root is further away than the root itself, so the shortest ancestral path goes through
+ * their lowest common ancestor in the tree and its length follows from the depths. Vertices of different trees
+ * may meet anywhere above them, so those queries are left unanswered for a search.
+ * <p/>
+ * The tour is cut into blocks of a few entries, and the sparse table only covers whole blocks, which keeps it
+ * small enough to stay in cache; the partial blocks at either end of a range are scanned. Tour entries carry
+ * their depth, so a query touches little more than the two vertices' entries and the table.
+ */
+class TreeLCA extends AncestralIndex {
+
+    private static final int BLOCK_BITS = 4;
+    private static final int BLOCK = 1 << BLOCK_BITS;
+
+    // beyond this many vertex pairs one search from both sets is cheaper than a lookup for each
+    private static final int MAX_PAIRS = 8;
+
+    // the tree of v, named by its root, at 2 * v and the index of v's first visit in the tour at 2 * v + 1
+    private final int[] places;
+    // the Euler tour of every tree, one after another, each entry a vertex with its depth in the high 32 bits
+    private final long[] tour;
+    // blockMinima[k][b] is the shallowest entry of blocks b .. b + 2^k - 1
+    private final long[][] blockMinima;
+
+    TreeLCA(CompactDigraph digraph) {
+        int vertices = digraph.V();
+        int[] order = ancestorsFirst(digraph);
+        CompactDigraph children = digraph.reverse();
+
+        places = new int[2 * vertices];
+        int[] depth = new int[vertices];
+        int roots = 0;
+        for (int v : order) {
+            if (digraph.outdegree(v) == 1) {
+                int parent = digraph.target(digraph.begin(v));
+                places[2 * v] = places[2 * parent];
+                depth[v] = depth[parent] + 1;
+            } else {
+                places[2 * v] = v;
+                roots++;
+            }
+        }
+
+        // the trees are toured one after another; a tree of n vertices takes 2n - 1 entries
+        tour = new long[2 * vertices - roots];
+        int tourLength = 0;
+        int[] stack = new int[vertices];
+        int[] nextChild = new int[vertices];
+        for (int root : order) {
+            if (places[2 * root] != root) {
+                continue;
+            }
+
+            int top = 0;
+            stack[top++] = root;
+            nextChild[root] = children.begin(root);
+            places[2 * root + 1] = tourLength;
+            tour[tourLength++] = entry(root, depth);
+            while (top > 0) {
+                int v = stack[top - 1];
+                int child = -1;
+                while (nextChild[v] < children.end(v) && child == -1) {
+                    int candidate = children.target(nextChild[v]++);
+                    if (digraph.outdegree(candidate) == 1) {
+                        child = candidate;
+                    }
+                }
+
+                if (child != -1) {
+                    stack[top++] = child;
+                    nextChild[child] = children.begin(child);
+                    places[2 * child + 1] = tourLength;
+                    tour[tourLength++] = entry(child, depth);
+                } else if (--top > 0) {
+                    tour[tourLength++] = entry(stack[top - 1], depth);
+                }
+            }
+        }
+
+        int blocks = (tourLength + BLOCK - 1) >>> BLOCK_BITS;
+        int levels = Math.max(1, 32 - Integer.numberOfLeadingZeros(blocks));
+        blockMinima = new long[levels][];
+        blockMinima[0] = new long[blocks];
+        for (int b = 0; b < blocks; b++) {
+            blockMinima[0][b] = scan(b << BLOCK_BITS, Math.min(tourLength, (b + 1) << BLOCK_BITS) - 1);
+        }
+        for (int k = 1; k < levels; k++) {
+            int half = 1 << (k - 1);
+            blockMinima[k] = new long[blocks - (1 << k) + 1];
+            for (int b = 0; b < blockMinima[k].length; b++) {
+                blockMinima[k][b] = Math.min(blockMinima[k - 1][b], blockMinima[k - 1][b + half]);
+            }
+        }
+    }
+
+    private static long entry(int v, int[] depth) {
+        return ((long) depth[v] << 32) | v;
+    }
+
+    // the shallowest tour entry in from .. to
+    private long scan(int from, int to) {
+        long min = Long.MAX_VALUE;
+        for (int i = from; i <= to; i++) {
+            min = Math.min(min, tour[i]);
+        }
+        return min;
+    }
+
+    // the shallowest tour entry in the whole blocks from .. to
+    private long blocks(int from, int to) {
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        return Math.min(blockMinima[k][from], blockMinima[k][to - (1 << k) + 1]);
+    }
+
+    // a new vertex or edge can split or merge trees anywhere below it, so the tour is built again
+    @Override
+    AncestralIndex update(CompactDigraph digraph, int[] changed) {
+        return new TreeLCA(digraph);
+    }
+
+    @Override
+    int size() {
+        int size = tour.length;
+        for (long[] level : blockMinima) {
+            size += level.length;
+        }
+        return size;
+    }
+
+    @Override
+    long memoryBytes() {
+        return 4L * places.length + 8L * size();
+    }
+
+    // the best lowest common ancestor when every pair of v and w shares a tree; UNANSWERED otherwise
+    @Override
+    long query(int[] v, int[] w) {
+        if (v.length * w.length > MAX_PAIRS) {
+            return UNANSWERED;
+        }
+        for (int vertex : v) {
+            for (int other : w) {
+                if (places[2 * other] != places[2 * vertex]) {
+                    return UNANSWERED;
+                }
+            }
+        }
+
+        long best = SAP.pack(-1, -1);
+        for (int vertex : v) {
+            for (int other : w) {
+                best = shorter(best, query(vertex, other));
+            }
+        }
+        return best;
+    }
+
+    @Override
+    long query(int v, int w) {
+        if (places[2 * v] != places[2 * w]) {
+            return UNANSWERED;
+        }
+
+        int from = Math.min(places[2 * v + 1], places[2 * w + 1]);
+        int to = Math.max(places[2 * v + 1], places[2 * w + 1]);
+        int fromBlock = from >>> BLOCK_BITS;
+        int toBlock = to >>> BLOCK_BITS;
+        long lowest;
+        if (fromBlock == toBlock) {
+            lowest = scan(from, to);
+        } else {
+            lowest = Math.min(scan(from, (fromBlock << BLOCK_BITS) + BLOCK - 1), scan(toBlock << BLOCK_BITS, to));
+            if (toBlock - fromBlock > 1) {
+                lowest = Math.min(lowest, blocks(fromBlock + 1, toBlock - 1));
+            }
+        }
+
+        int depthV = (int) (tour[places[2 * v + 1]] >>> 32);
+        int depthW = (int) (tour[places[2 * w + 1]] >>> 32);
+        return SAP.pack(depthV + depthW - 2 * (int) (lowest >>> 32), (int) lowest);
+    }
+}
@@ -1,182 +1,438 @@
-import java.util.LinkedHashMap;
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.Iterator;
-import java.util.Arrays;
-import java.util.LinkedHashSet;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * User: outzider
  * Date: 11/9/13
  * Time: 6:20 PM
+ * <p/>
+ * A WordNet is never modified after construction, so distance() and sap() may be called from many threads.
  */
 public class WordNet {
 
-    private Map<Integer, SynonymSet> synonymSets;
-    private final Map<String, List<Integer>> allNouns;
-    private final Digraph wordNet;
+    private final SynsetNames synsetNames;
+    private final NounDictionary nounDictionary;
+    private final CompactDigraph digraph;
     private final SAP sap;
+    private final WordNetBuildReport report;
+    // the reversed digraph, built by the first call to nearest(); racing calls build equal copies
+    private volatile CompactDigraph hyponyms;
 
-    private class SynonymSet {
-        private Set<String> nouns;
-        private List<Integer> hypernyms;
+    // constructor takes the name of the two input files
+    /* DAG (Direct Acyclic Graph) - directed graph with no cycles. A rooted DAG means there is 1 vertex
+    for which there are no incoming edges (indegree = 0) */
 
-        private SynonymSet() {
-            hypernyms = new ArrayList<Integer>();
-        }
+    public WordNet(String synsets, String hypernyms) {
+        this(synsets, hypernyms, 0);
+    }
 
-        private Set<String> getNouns() {
-            return nouns;
-        }
+    // as above, but caches the cacheSize most recently used distance/sap queries; 0 disables the cache
+    public WordNet(String synsets, String hypernyms, int cacheSize) {
+        this(synsets, hypernyms, SAP.Backend.BREADTH_FIRST, cacheSize);
+    }
 
-        private void setNouns(Set<String> inNouns) {
-            this.nouns = inNouns;
-        }
+    // as above, answering distance/sap queries with the given SAP backend
+    public WordNet(String synsets, String hypernyms, SAP.Backend backend, int cacheSize) {
+        report = new WordNetBuildReport();
 
-        private List<Integer> getHypernyms() {
-            return hypernyms;
-        }
+        long start = System.nanoTime();
+        String[][] synsetNouns = WordNetParser.readSynsets(synsets);
+        report.phase("parse synsets", start);
 
-        private void addHypernyms(List<Integer> inHypernyms) {
-            this.hypernyms.addAll(inHypernyms);
-        }
+        start = System.nanoTime();
+        digraph = WordNetParser.readHypernyms(hypernyms, synsetNouns.length);
+        report.phase("parse hypernyms", start);
+
+        start = System.nanoTime();
+        synsetNames = SynsetNames.build(synsetNouns);
+        report.phase("synset names", start);
+
+        start = System.nanoTime();
+        nounDictionary = NounDictionary.build(synsetNouns);
+        report.phase("noun dictionary", start);
+
+        start = System.nanoTime();
+        int root = checkForInvalidCycleAndMultipleRoots(digraph);
+        report.phase("validate", start);
+
+        start = System.nanoTime();
+        sap = new SAP(digraph, backend, cacheSize);
+        report.phase("sap", start);
+        report.finish(root);
     }
 
-    // constructor takes the name of the two input files
-    /* DAG (Direct Acyclic Graph) - directed graph with no cycles. A rooted DAG means there is 1 vertex
-    for which there are no incoming edges (indegree = 0) */
+    // a WordNet restored from a snapshot, which was validated when it was first built
+    private WordNet(WordNetSnapshot snapshot, SAP.Backend backend, int cacheSize) {
+        report = new WordNetBuildReport();
+        synsetNames = snapshot.synsetNames();
+        nounDictionary = snapshot.nounDictionary();
+        digraph = snapshot.digraph();
 
-    public WordNet(String synsets, String hypernyms) {
-        synonymSets = new LinkedHashMap<Integer, SynonymSet>();
-        allNouns = new TreeMap<String, List<Integer>>();
+        long start = System.nanoTime();
+        sap = new SAP(digraph, backend, cacheSize);
+        report.phase("sap", start);
 
-        readAndParseSynsetsInputFile(synsets);
-        readAndParseHypernymsInputFile(hypernyms);
+        int root = 0;
+        while (root < digraph.V() && digraph.outdegree(root) > 0) {
+            root++;
+        }
+        report.finish(root < digraph.V() ? root : -1);
+    }
 
-        wordNet = new Digraph(synonymSets.size());
-        for (int vertexId : synonymSets.keySet()) {
-            for (int hypernymsId : synonymSets.get(vertexId).getHypernyms()) {
-                wordNet.addEdge(vertexId, hypernymsId);
-            }
+    private WordNet(SynsetNames synsetNames, NounDictionary nounDictionary, CompactDigraph digraph, SAP sap,
+                    WordNetBuildReport report) {
+        this.synsetNames = synsetNames;
+        this.nounDictionary = nounDictionary;
+        this.digraph = digraph;
+        this.sap = sap;
+        this.report = report;
+    }
+
+    // builds the same WordNet as the constructor, parsing and validating on a temporary pool of all processors
+    public static WordNet buildInParallel(String synsets, String hypernyms, SAP.Backend backend, int cacheSize) {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return buildInParallel(synsets, hypernyms, backend, cacheSize, executor);
+        } finally {
+            executor.shutdown();
         }
+    }
 
-        checkForInvalidCycleAndMultipleRoots();
+    /* Both files are split at line breaks into one chunk per thread of the executor and every chunk is parsed
+    concurrently into its own buffers, which are merged once all of them are done. The synset names, the noun
+    dictionary and the Kahn validation of the hypernym digraph then run concurrently as well. */
+    public static WordNet buildInParallel(String synsets, String hypernyms, SAP.Backend backend, int cacheSize,
+                                          ExecutorService executor) {
+        final WordNetBuildReport report = new WordNetBuildReport();
+        int parts = Futures.threads(executor);
+
+        // each side is timed from its own start until its last chunk is parsed, plus its merge
+        final long synsetsStart = System.nanoTime();
+        final long[] synsetsParsed = {synsetsStart};
+        List<Future<WordNetParser.SynsetLines>> synsetChunks = new ArrayList<Future<WordNetParser.SynsetLines>>();
+        for (final ByteBuffer chunk : WordNetParser.chunks(synsets, parts)) {
+            final String file = synsets;
+            synsetChunks.add(executor.submit(new Callable<WordNetParser.SynsetLines>() {
+                public WordNetParser.SynsetLines call() {
+                    WordNetParser.SynsetLines lines = WordNetParser.parseSynsets(chunk, file);
+                    finished(synsetsParsed);
+                    return lines;
+                }
+            }));
+        }
+        final long hypernymsStart = System.nanoTime();
+        final long[] hypernymsParsed = {hypernymsStart};
+        List<Future<WordNetParser.Edges>> edgeChunks = new ArrayList<Future<WordNetParser.Edges>>();
+        for (final ByteBuffer chunk : WordNetParser.chunks(hypernyms, parts)) {
+            final String file = hypernyms;
+            edgeChunks.add(executor.submit(new Callable<WordNetParser.Edges>() {
+                public WordNetParser.Edges call() {
+                    WordNetParser.Edges edges = WordNetParser.parseHypernyms(chunk, file);
+                    finished(hypernymsParsed);
+                    return edges;
+                }
+            }));
+        }
 
-        sap = new SAP(wordNet);
+        List<WordNetParser.SynsetLines> synsetLines = Futures.awaitAll(synsetChunks);
+        long mergeStart = System.nanoTime();
+        final String[][] synsetNouns = WordNetParser.mergeSynsets(synsetLines);
+        report.phase("parse synsets", synsetsStart, lastFinish(synsetsParsed) + System.nanoTime() - mergeStart);
+        List<WordNetParser.Edges> edges = Futures.awaitAll(edgeChunks);
+        mergeStart = System.nanoTime();
+        final CompactDigraph digraph = WordNetParser.mergeHypernyms(edges, synsetNouns.length);
+        report.phase("parse hypernyms", hypernymsStart, lastFinish(hypernymsParsed) + System.nanoTime() - mergeStart);
+
+        Future<SynsetNames> names = executor.submit(new Callable<SynsetNames>() {
+            public SynsetNames call() {
+                long start = System.nanoTime();
+                SynsetNames names = SynsetNames.build(synsetNouns);
+                report.phase("synset names", start);
+                return names;
+            }
+        });
+        Future<NounDictionary> dictionary = executor.submit(new Callable<NounDictionary>() {
+            public NounDictionary call() {
+                long start = System.nanoTime();
+                NounDictionary dictionary = NounDictionary.build(synsetNouns);
+                report.phase("noun dictionary", start);
+                return dictionary;
+            }
+        });
+        Future<Integer> root = executor.submit(new Callable<Integer>() {
+            public Integer call() {
+                long start = System.nanoTime();
+                int root = checkForInvalidCycleAndMultipleRoots(digraph);
+                report.phase("validate", start);
+                return root;
+            }
+        });
+        int rootSynset = Futures.await(root);
+        SynsetNames synsetNames = Futures.await(names);
+        NounDictionary nounDictionary = Futures.await(dictionary);
+
+        long start = System.nanoTime();
+        SAP sap = new SAP(digraph, backend, cacheSize);
+        report.phase("sap", start);
+        report.finish(rootSynset);
+        return new WordNet(synsetNames, nounDictionary, digraph, sap, report);
     }
 
-    private void checkForInvalidCycleAndMultipleRoots() {
-        DirectedCycle directedCycle = new DirectedCycle(wordNet);
-        if (directedCycle.hasCycle()) {
-            throw new IllegalArgumentException("Wordnet contains a cycle");
+    /* A new WordNet with the synsets and hypernym edges of the update added; this one is left unchanged, so
+    queries on it can continue meanwhile. Nothing is parsed again: the names and the noun dictionary are extended,
+    and only the region the new edges can affect is validated. A new cycle has to pass through a new edge and
+    so lies among the ancestors of the new edges' hypernyms, which a Kahn pass over just those vertices finds.
+    Only the old root and the new synsets can be roots afterwards. The SAP keeps whatever part of its index and
+    cache the new edges cannot have changed. */
+    public WordNet update(WordNetUpdate update) {
+        WordNetBuildReport updateReport = new WordNetBuildReport();
+        int oldCount = digraph.V();
+
+        long start = System.nanoTime();
+        String[][] added = update.synsets(oldCount);
+        int count = oldCount + added.length;
+        int[] from = update.from();
+        int[] to = update.to();
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] >= count || to[i] >= count) {
+                throw new IllegalArgumentException("Hypernym edge " + from[i] + " -> " + to[i]
+                        + " refers to an unknown synset");
+            }
         }
+        CompactDigraph grown = digraph.withEdges(count, from, to);
+        updateReport.phase("hypernyms", start);
 
+        start = System.nanoTime();
+        if (grown.sinksFirst(grown.reachableFrom(to)) == null) {
+            throw new IllegalArgumentException("Wordnet contains a cycle");
+        }
+        int root = -1;
         int rootCount = 0;
-        for (int i = 0; i < wordNet.V(); i++) {
-            if (!wordNet.adj(i).iterator().hasNext()) {
+        if (report.root() != -1 && grown.outdegree(report.root()) == 0) {
+            root = report.root();
+            rootCount++;
+        }
+        for (int v = oldCount; v < count; v++) {
+            if (grown.outdegree(v) == 0) {
+                root = v;
                 rootCount++;
-
-                if (rootCount > 1) {
-                    throw new IllegalArgumentException("Wordnet has more than one root");
-                }
             }
         }
-    }
+        if (rootCount > 1) {
+            throw new IllegalArgumentException("Wordnet has more than one root");
+        }
+        updateReport.phase("validate", start);
 
-    private void readAndParseSynsetsInputFile(String synsets) {
-        In in = new In(synsets);
-        String line = in.readLine();
-        while (line != null) {
-            SynonymSet synonymSet = new SynonymSet();
+        start = System.nanoTime();
+        SynsetNames grownNames = synsetNames.withSynsets(added);
+        updateReport.phase("synset names", start);
 
-            Set nounSet = new LinkedHashSet();
-            String[] parts = line.split(",");
-            String[] nouns = parts[1].split(" ");
-            nounSet.addAll(Arrays.asList(nouns));
-            synonymSet.setNouns(nounSet);
+        start = System.nanoTime();
+        NounDictionary grownDictionary = nounDictionary.withSynsets(added, oldCount);
+        updateReport.phase("noun dictionary", start);
 
-            int id = Integer.parseInt(parts[0]);
+        start = System.nanoTime();
+        SAP grownSap = sap.update(grown, from);
+        updateReport.phase("sap", start);
+        updateReport.finish(root);
 
-            for (String noun : nouns) {
-                if (allNouns.containsKey(noun)) {
-                    List<Integer> ids = allNouns.get(noun);
-                    ids.add(id);
-                } else {
-                    List<Integer> ids = new ArrayList<Integer>();
-                    ids.add(id);
-                    allNouns.put(noun, ids);
-                }
-            }
+        return new WordNet(grownNames, grownDictionary, grown, grownSap, updateReport);
+    }
 
-            synonymSets.put(id, synonymSet);
+    // records that a task of a phase finished now, keeping the latest such time in finish[0]
+    private static void finished(long[] finish) {
+        synchronized (finish) {
+            finish[0] = Math.max(finish[0], System.nanoTime());
+        }
+    }
 
-            line = in.readLine();
+    private static long lastFinish(long[] finish) {
+        synchronized (finish) {
+            return finish[0];
         }
     }
 
-    private void readAndParseHypernymsInputFile(String hypernyms) {
-        In in = new In(hypernyms);
-        String line = in.readLine();
-        while (line != null) {
-            String[] parts = line.split(",");
+    // loads a WordNet written by save(), without parsing or validating the original files again
+    public static WordNet load(String snapshot) {
+        return load(snapshot, SAP.Backend.BREADTH_FIRST, 0);
+    }
 
-            SynonymSet synonymSet = synonymSets.get(Integer.parseInt(parts[0]));
+    // as above, with the given SAP backend and cache size
+    public static WordNet load(String snapshot, SAP.Backend backend, int cacheSize) {
+        return new WordNet(WordNetSnapshot.read(snapshot), backend, cacheSize);
+    }
 
-            String[] hypernymIds = Arrays.copyOfRange(parts, 1, parts.length);
-            List<Integer> synsetHypernyms = new ArrayList<Integer>(hypernymIds.length);
+    // writes a versioned, checksummed binary snapshot of this WordNet for load()
+    public void save(String snapshot) {
+        WordNetSnapshot.write(snapshot, synsetNames, nounDictionary, digraph);
+    }
 
-            for (String id : hypernymIds) {
-                synsetHypernyms.add(Integer.parseInt(id));
-            }
-            synonymSet.addHypernyms(synsetHypernyms);
+    // per-phase timings of building this WordNet, and its root synset
+    public WordNetBuildReport buildReport() {
+        return report;
+    }
+
+    // number of distance/sap queries answered from the cache; 0 if the cache is disabled
+    public long cacheHits() {
+        return sap.cacheHits();
+    }
 
-            line = in.readLine();
+    // number of distance/sap queries that had to be searched because they were not cached
+    public long cacheMisses() {
+        return sap.cacheMisses();
+    }
+
+    /* A topological pass (Kahn's algorithm) fails on a cycle and emits every vertex without hypernyms before
+    any other, so the first vertex is the root and the second must not be another one. */
+    private static int checkForInvalidCycleAndMultipleRoots(CompactDigraph wordNet) {
+        int[] order = wordNet.sinksFirst();
+        if (order == null) {
+            throw new IllegalArgumentException("Wordnet contains a cycle");
+        }
+        if (order.length > 1 && wordNet.outdegree(order[1]) == 0) {
+            throw new IllegalArgumentException("Wordnet has more than one root");
         }
+        return order.length > 0 ? order[0] : -1;
     }
 
     // the set of nouns (no duplicates), returned as an Iterable
     public Iterable<String> nouns() {
-        return new HashSet<String>(allNouns.keySet());
+        return nounDictionary.nouns();
+    }
+
+    // at most limit nouns that start with the prefix, in sorted order; each is decoded only when iterated to
+    public Iterable<String> nounsWithPrefix(String prefix, int limit) {
+        if (prefix == null || limit < 0) {
+            throw new IllegalArgumentException();
+        }
+        return nounDictionary.nounsWithPrefix(prefix, limit);
+    }
+
+    // as above, for the nouns matching a pattern in which '*' stands for any characters and '?' for any one
+    public Iterable<String> nounsMatching(String pattern, int limit) {
+        if (pattern == null || limit < 0) {
+            throw new IllegalArgumentException();
+        }
+        return nounDictionary.nounsMatching(pattern, limit);
     }
 
     // is the word a WordNet noun?
     public boolean isNoun(String word) {
-        return allNouns.containsKey(word);
+        return nounDictionary.find(word) != -1;
     }
 
     // distance between nounA and nounB (defined below)
     public int distance(String nounA, String nounB) {
-        if (isNoun(nounA) && isNoun(nounB)) {
+        int indexA = nounDictionary.find(nounA);
+        int indexB = nounDictionary.find(nounB);
+        if (indexA != -1 && indexB != -1) {
 
-            return sap.length(allNouns.get(nounA), allNouns.get(nounB));
+            return sap.length(nounDictionary.synsets(indexA), nounDictionary.synsets(indexB));
         } else {
             throw new IllegalArgumentException();
         }
     }
 
+    // distances between pairs.get(i)[0] and pairs.get(i)[1] for every i, computed in parallel
+    public int[] distances(List<String[]> pairs) {
+        List<List<Integer>> nounsA = new ArrayList<List<Integer>>(pairs.size());
+        List<List<Integer>> nounsB = new ArrayList<List<Integer>>(pairs.size());
+        for (String[] pair : pairs) {
+            int indexA = pair.length == 2 ? nounDictionary.find(pair[0]) : -1;
+            int indexB = pair.length == 2 ? nounDictionary.find(pair[1]) : -1;
+            if (indexA != -1 && indexB != -1) {
+                nounsA.add(nounDictionary.synsets(indexA));
+                nounsB.add(nounDictionary.synsets(indexB));
+            } else {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        return sap.lengths(nounsA, nounsB);
+    }
+
+    /* distance() between every pair of the nouns, as a row-major nouns.length x nouns.length matrix: the entry
+    i * nouns.length + j is the distance between nouns[i] and nouns[j]. */
+    public int[] distanceMatrix(String[] nouns) {
+        return distanceMatrix(nouns, SAP.BatchPool.POOL);
+    }
+
+    // as above, running the searches on the given pool
+    public int[] distanceMatrix(String[] nouns, ForkJoinPool pool) {
+        List<List<Integer>> synsets = new ArrayList<List<Integer>>(nouns.length);
+        for (String noun : nouns) {
+            int index = nounDictionary.find(noun);
+            if (index == -1) {
+                throw new IllegalArgumentException();
+            }
+            synsets.add(nounDictionary.synsets(index));
+        }
+
+        return DistanceMatrix.compute(digraph, synsets, pool);
+    }
+
+    // writes distanceMatrix(nouns) to the file: the int nouns.length and then the matrix row by row, as big-endian ints
+    public void writeDistanceMatrix(String[] nouns, String file) {
+        DistanceMatrix.write(file, nouns.length, distanceMatrix(nouns));
+    }
+
+    // the ancestors of the noun's synsets with their distances, for DistanceMatrix.distance()
+    long[] ancestors(String noun) {
+        int index = nounDictionary.find(noun);
+        if (index == -1) {
+            throw new IllegalArgumentException();
+        }
+        return DistanceMatrix.ancestors(digraph, nounDictionary.synsets(index));
+    }
+
+    // the k nouns closest to noun by distance(), nearest first and alphabetically among equal distances
+    public List<String> nearest(String noun, int k) {
+        int index = nounDictionary.find(noun);
+        if (index == -1 || k < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        CompactDigraph reversed = hyponyms;
+        if (reversed == null) {
+            reversed = digraph.reverse();
+            hyponyms = reversed;
+        }
+        return NearestNouns.nearest(digraph, reversed, synsetNames, nounDictionary.synsets(index), noun, k);
+    }
+
     // a synset (second field of synsets.txt) that is the common ancestor of nounA and nounB
     // in a shortest ancestral path (defined below)
     public String sap(String nounA, String nounB) {
-        if (isNoun(nounA) && isNoun(nounB)) {
-
-            int ancestor = sap.ancestor(allNouns.get(nounA), allNouns.get(nounB));
-
-            Set<String> nouns = synonymSets.get(ancestor).getNouns();
-            StringBuilder builder = new StringBuilder();
-            Iterator<String> iterator = nouns.iterator();
-            while (iterator.hasNext()) {
-                String noun = iterator.next();
-                builder.append(noun);
-                if (iterator.hasNext()) {
-                    builder.append(" ");
-                }
-            }
+        int indexA = nounDictionary.find(nounA);
+        int indexB = nounDictionary.find(nounB);
+        if (indexA != -1 && indexB != -1) {
+
+            int ancestor = sap.ancestor(nounDictionary.synsets(indexA), nounDictionary.synsets(indexB));
+
+            return synsetNames.name(ancestor);
+        } else {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // every synset that is the common ancestor of nounA and nounB in some shortest ancestral path, by synset id
+    public String[] saps(String nounA, String nounB) {
+        int indexA = nounDictionary.find(nounA);
+        int indexB = nounDictionary.find(nounB);
+        if (indexA != -1 && indexB != -1) {
 
-            return builder.toString();
+            int[] ancestors = sap.ancestors(nounDictionary.synsets(indexA), nounDictionary.synsets(indexB));
+            String[] names = new String[ancestors.length];
+            for (int i = 0; i < ancestors.length; i++) {
+                names[i] = synsetNames.name(ancestors[i]);
+            }
+            return names;
         } else {
             throw new IllegalArgumentException();
         }
@@ -0,0 +1,53 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How long each phase of building a WordNet took, in the order the phases finished, and the root synset found
+ * by validation. Phases that ran concurrently each report their own time, so the total can be less than the sum.
+ */
+public final class WordNetBuildReport {
+
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<String, Long>();
+    private final long startNanos = System.nanoTime();
+    private long totalMillis;
+    private int root = -1;
+
+    WordNetBuildReport() {
+    }
+
+    synchronized void phase(String name, long startNanos) {
+        phase(name, startNanos, System.nanoTime());
+    }
+
+    synchronized void phase(String name, long startNanos, long endNanos) {
+        phaseMillis.put(name, (endNanos - startNanos) / 1000000);
+    }
+
+    synchronized void finish(int root) {
+        this.root = root;
+        totalMillis = (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    public synchronized Map<String, Long> phaseMillis() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(phaseMillis));
+    }
+
+    // the synset with no hypernyms
+    public synchronized int root() {
+        return root;
+    }
+
+    public synchronized long totalMillis() {
+        return totalMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<String, Long> phase : phaseMillis.entrySet()) {
+            s.append(phase.getKey()).append(" = ").append(phase.getValue()).append(" ms, ");
+        }
+        return s.append("total = ").append(totalMillis).append(" ms").toString();
+    }
+}
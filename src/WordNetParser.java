@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the synsets and hypernyms files straight from a memory-mapped buffer. Ids are parsed from the bytes
+ * without creating Strings, hypernym edges go directly into primitive arrays, and the only objects created
+ * are the noun Strings themselves.
+ * <p/>
+ * A file can also be split into chunks at line breaks and the chunks parsed independently, each into its own
+ * buffers, which are merged once all of them are done.
+ */
+final class WordNetParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private WordNetParser() {
+    }
+
+    // the synset lines of one chunk of a synsets file
+    static final class SynsetLines {
+        private int[] ids = new int[256];
+        private String[][] nouns = new String[256][];
+        private int count;
+        private int maxId = -1;
+
+        void add(int id, String[] synsetNouns) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * count);
+                nouns = Arrays.copyOf(nouns, 2 * count);
+            }
+            ids[count] = id;
+            nouns[count] = synsetNouns;
+            count++;
+            maxId = Math.max(maxId, id);
+        }
+
+        int size() {
+            return count;
+        }
+
+        int id(int i) {
+            return ids[i];
+        }
+
+        String[] nouns(int i) {
+            return nouns[i];
+        }
+    }
+
+    // the hypernym edges of one chunk of a hypernyms file, in two growing int arrays
+    static final class Edges {
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private int count;
+
+        void add(int id, int hypernym) {
+            if (count == from.length) {
+                from = Arrays.copyOf(from, 2 * count);
+                to = Arrays.copyOf(to, 2 * count);
+            }
+            from[count] = id;
+            to[count] = hypernym;
+            count++;
+        }
+
+        int[] from() {
+            return Arrays.copyOf(from, count);
+        }
+
+        int[] to() {
+            return Arrays.copyOf(to, count);
+        }
+    }
+
+    // the nouns of every synset, indexed by synset id, in file order and without duplicates
+    static String[][] readSynsets(String file) {
+        return mergeSynsets(Arrays.asList(parseSynsets(map(file), file)));
+    }
+
+    // the hypernym digraph on synsets 0 .. synsetCount - 1
+    static CompactDigraph readHypernyms(String file, int synsetCount) {
+        return mergeHypernyms(Arrays.asList(parseHypernyms(map(file), file)), synsetCount);
+    }
+
+    // splits the file into at most the given number of slices, each ending just after a line break
+    static ByteBuffer[] chunks(String file, int parts) {
+        ByteBuffer buffer = map(file);
+        List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+        int start = 0;
+        for (int part = 1; part <= parts && start < buffer.limit(); part++) {
+            // every chunk takes at least one byte, so a file shorter than parts yields fewer, non-empty chunks
+            int end = part == parts
+                    ? buffer.limit() : Math.max(start + 1, (int) ((long) buffer.limit() * part / parts));
+            while (end < buffer.limit() && buffer.get(end - 1) != '\n') {
+                end++;
+            }
+
+            ByteBuffer chunk = buffer.duplicate();
+            chunk.position(start);
+            chunk.limit(end);
+            chunks.add(chunk.slice());
+            start = end;
+        }
+        return chunks.toArray(new ByteBuffer[chunks.size()]);
+    }
+
+    /* Lines look like "36,AND_circuit AND_gate,a circuit in a computer that fires ...": the gloss after the
+    second comma is skipped. */
+    static SynsetLines parseSynsets(ByteBuffer buffer, String file) {
+        SynsetLines lines = new SynsetLines();
+        byte[] scratch = new byte[64];
+        String[] nouns = new String[8];
+
+        while (buffer.hasRemaining()) {
+            if (skipLineBreaks(buffer)) {
+                break;
+            }
+
+            int id = readInt(buffer, file);
+            expect(buffer, ',', file);
+
+            int nounCount = 0;
+            boolean moreNouns = true;
+            while (moreNouns) {
+                int length = 0;
+                while (buffer.hasRemaining() && !endsNoun(peek(buffer))) {
+                    if (length == scratch.length) {
+                        scratch = Arrays.copyOf(scratch, 2 * length);
+                    }
+                    scratch[length++] = buffer.get();
+                }
+
+                if (length > 0) {
+                    String noun = new String(scratch, 0, length, UTF_8);
+                    if (!contains(nouns, nounCount, noun)) {
+                        if (nounCount == nouns.length) {
+                            nouns = Arrays.copyOf(nouns, 2 * nounCount);
+                        }
+                        nouns[nounCount++] = noun;
+                    }
+                }
+
+                moreNouns = buffer.hasRemaining() && peek(buffer) == ' ';
+                if (moreNouns) {
+                    buffer.get();
+                }
+            }
+            skipLine(buffer);
+
+            lines.add(id, Arrays.copyOf(nouns, nounCount));
+        }
+
+        return lines;
+    }
+
+    static String[][] mergeSynsets(List<SynsetLines> chunks) {
+        int count = 0;
+        for (SynsetLines lines : chunks) {
+            count = Math.max(count, lines.maxId + 1);
+        }
+
+        String[][] synsets = new String[count][];
+        for (SynsetLines lines : chunks) {
+            for (int i = 0; i < lines.count; i++) {
+                synsets[lines.ids[i]] = lines.nouns[i];
+            }
+        }
+        return synsets;
+    }
+
+    /* Lines look like "34,47569,48084": a synset id followed by any number of hypernym ids, and a synset may
+    appear on more than one line. */
+    static Edges parseHypernyms(ByteBuffer buffer, String file) {
+        Edges edges = new Edges();
+
+        while (buffer.hasRemaining()) {
+            if (skipLineBreaks(buffer)) {
+                break;
+            }
+
+            int id = readInt(buffer, file);
+            while (buffer.hasRemaining() && peek(buffer) == ',') {
+                buffer.get();
+                edges.add(id, readInt(buffer, file));
+            }
+            skipLine(buffer);
+        }
+
+        return edges;
+    }
+
+    // concatenates the edges of every chunk into one digraph
+    static CompactDigraph mergeHypernyms(List<Edges> chunks, int synsetCount) {
+        int count = 0;
+        for (Edges edges : chunks) {
+            count += edges.count;
+        }
+
+        int[] from = new int[count];
+        int[] to = new int[count];
+        int offset = 0;
+        for (Edges edges : chunks) {
+            for (int i = 0; i < edges.count; i++) {
+                if (edges.from[i] >= synsetCount || edges.to[i] >= synsetCount) {
+                    throw new IllegalArgumentException("Hypernym edge " + edges.from[i] + " -> " + edges.to[i]
+                            + " refers to an unknown synset");
+                }
+            }
+            System.arraycopy(edges.from, 0, from, offset, edges.count);
+            System.arraycopy(edges.to, 0, to, offset, edges.count);
+            offset += edges.count;
+        }
+
+        return new CompactDigraph(synsetCount, from, to);
+    }
+
+    // the whole file as a read-only buffer
+    static ByteBuffer map(String file) {
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            FileChannel channel = input.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not open " + file, e);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // the mapping stays valid after the file is closed
+                }
+            }
+        }
+    }
+
+    private static int readInt(ByteBuffer buffer, String file) {
+        int value = 0;
+        int digits = 0;
+        while (buffer.hasRemaining() && peek(buffer) >= '0' && peek(buffer) <= '9') {
+            value = 10 * value + (buffer.get() - '0');
+            digits++;
+        }
+        if (digits == 0) {
+            throw new IllegalArgumentException("Expected a number at byte " + buffer.position() + " of " + file);
+        }
+        return value;
+    }
+
+    private static void expect(ByteBuffer buffer, char expected, String file) {
+        if (!buffer.hasRemaining() || buffer.get() != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' before byte " + buffer.position()
+                    + " of " + file);
+        }
+    }
+
+    // skips blank lines; true if that reached the end of the buffer
+    private static boolean skipLineBreaks(ByteBuffer buffer) {
+        while (buffer.hasRemaining() && (peek(buffer) == '\n' || peek(buffer) == '\r')) {
+            buffer.get();
+        }
+        return !buffer.hasRemaining();
+    }
+
+    private static void skipLine(ByteBuffer buffer) {
+        while (buffer.hasRemaining() && buffer.get() != '\n') {
+            // the rest of the line is not needed
+        }
+    }
+
+    private static boolean endsNoun(byte b) {
+        return b == ' ' || b == ',' || b == '\n' || b == '\r';
+    }
+
+    private static byte peek(ByteBuffer buffer) {
+        return buffer.get(buffer.position());
+    }
+
+    private static boolean contains(String[] nouns, int count, String noun) {
+        for (int i = 0; i < count; i++) {
+            if (nouns[i].equals(noun)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary image of a fully built WordNet, so that a process can start without parsing the text files, sorting
+ * the nouns or validating the digraph again.
+ * <p/>
+ * Layout, all ints big-endian: magic, version, synset count, edge count, synset names size and noun dictionary
+ * size in bytes; the hypernym digraph as CSR offsets plus targets; the SynsetNames table; the NounDictionary
+ * table; and finally a CRC32 of everything before it, as a long. Both tables are used in place, as slices of the
+ * mapped file, so loading never copies them onto the heap.
+ */
+final class WordNetSnapshot {
+
+    private static final int MAGIC = 0x574E5350;
+    private static final int VERSION = 3;
+
+    private final SynsetNames synsetNames;
+    private final NounDictionary nounDictionary;
+    private final CompactDigraph digraph;
+
+    private WordNetSnapshot(SynsetNames synsetNames, NounDictionary nounDictionary, CompactDigraph digraph) {
+        this.synsetNames = synsetNames;
+        this.nounDictionary = nounDictionary;
+        this.digraph = digraph;
+    }
+
+    SynsetNames synsetNames() {
+        return synsetNames;
+    }
+
+    NounDictionary nounDictionary() {
+        return nounDictionary;
+    }
+
+    CompactDigraph digraph() {
+        return digraph;
+    }
+
+    static void write(String file, SynsetNames synsetNames, NounDictionary nounDictionary, CompactDigraph digraph) {
+        DataOutputStream out = null;
+        try {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), 1 << 16), new CRC32());
+            out = new DataOutputStream(checked);
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(synsetNames.size());
+            out.writeInt(digraph.E());
+            out.writeInt(synsetNames.byteSize());
+            out.writeInt(nounDictionary.byteSize());
+
+            for (int v = 0; v <= digraph.V(); v++) {
+                out.writeInt(v < digraph.V() ? digraph.begin(v) : digraph.E());
+            }
+            for (int edge = 0; edge < digraph.E(); edge++) {
+                out.writeInt(digraph.target(edge));
+            }
+
+            synsetNames.writeTo(out);
+            nounDictionary.writeTo(out);
+
+            out.writeLong(checked.getChecksum().getValue());
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // already failing with the original exception
+                }
+            }
+        }
+    }
+
+    static WordNetSnapshot read(String file) {
+        ByteBuffer buffer = WordNetParser.map(file);
+        if (buffer.limit() < 32 || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(file + " is not a WordNet snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException(file + " is a version " + buffer.getInt(4)
+                    + " WordNet snapshot, expected version " + VERSION);
+        }
+        if (checksum(buffer, buffer.limit() - 8) != buffer.getLong(buffer.limit() - 8)) {
+            throw new IllegalArgumentException(file + " is corrupt: checksum mismatch");
+        }
+
+        buffer.position(8);
+        int synsetCount = buffer.getInt();
+        int edgeCount = buffer.getInt();
+        int namesSize = buffer.getInt();
+        int dictionarySize = buffer.getInt();
+
+        int[] edgeOffsets = readInts(buffer, synsetCount + 1);
+        int[] targets = readInts(buffer, edgeCount);
+
+        int namesStart = buffer.position();
+        buffer.limit(namesStart + namesSize);
+        SynsetNames synsetNames = new SynsetNames(buffer.slice());
+
+        buffer.limit(namesStart + namesSize + dictionarySize);
+        buffer.position(namesStart + namesSize);
+        NounDictionary nounDictionary = new NounDictionary(buffer.slice());
+
+        return new WordNetSnapshot(synsetNames, nounDictionary, new CompactDigraph(edgeOffsets, targets));
+    }
+
+    // copies the whole buffer, whatever its position, using absolute reads only
+    static void writeBuffer(ByteBuffer buffer, DataOutputStream out) throws IOException {
+        byte[] chunk = new byte[1 << 16];
+        for (int offset = 0; offset < buffer.limit(); offset += chunk.length) {
+            int length = Math.min(chunk.length, buffer.limit() - offset);
+            for (int i = 0; i < length; i++) {
+                chunk[i] = buffer.get(offset + i);
+            }
+            out.write(chunk, 0, length);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    private static long checksum(ByteBuffer buffer, int length) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[1 << 16];
+        ByteBuffer content = buffer.duplicate();
+        content.position(0);
+        while (content.position() < length) {
+            int size = Math.min(chunk.length, length - content.position());
+            content.get(chunk, 0, size);
+            crc.update(chunk, 0, size);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/**
+ * A batch of synsets and hypernym edges to add to a WordNet with WordNet.update(). Synset ids continue the
+ * existing ones: a WordNet with n synsets takes a batch whose synsets have the ids n, n + 1, ..., in any order.
+ * Edges may connect old and new synsets in either direction.
+ */
+public final class WordNetUpdate {
+
+    private final WordNetParser.SynsetLines synsets = new WordNetParser.SynsetLines();
+    private final WordNetParser.Edges edges = new WordNetParser.Edges();
+
+    public WordNetUpdate() {
+    }
+
+    // reads a delta in the format of synsets.txt and hypernyms.txt; either file may be null
+    public static WordNetUpdate read(String synsets, String hypernyms) {
+        WordNetUpdate update = new WordNetUpdate();
+        if (synsets != null) {
+            WordNetParser.SynsetLines lines = WordNetParser.parseSynsets(WordNetParser.map(synsets), synsets);
+            for (int i = 0; i < lines.size(); i++) {
+                update.synsets.add(lines.id(i), lines.nouns(i));
+            }
+        }
+        if (hypernyms != null) {
+            WordNetParser.Edges lines = WordNetParser.parseHypernyms(WordNetParser.map(hypernyms), hypernyms);
+            int[] from = lines.from();
+            int[] to = lines.to();
+            for (int i = 0; i < from.length; i++) {
+                update.edges.add(from[i], to[i]);
+            }
+        }
+        return update;
+    }
+
+    // adds a synset with the given nouns; repeated nouns are kept once
+    public WordNetUpdate addSynset(int id, String... nouns) {
+        if (id < 0 || nouns.length == 0) {
+            throw new IllegalArgumentException("A synset needs a non-negative id and at least one noun");
+        }
+
+        String[] distinct = new String[nouns.length];
+        int count = 0;
+        for (String noun : nouns) {
+            if (noun == null || noun.isEmpty() || noun.indexOf(' ') != -1 || noun.indexOf(',') != -1) {
+                throw new IllegalArgumentException("Invalid noun: " + noun);
+            }
+            boolean repeated = false;
+            for (int i = 0; i < count; i++) {
+                repeated |= distinct[i].equals(noun);
+            }
+            if (!repeated) {
+                distinct[count++] = noun;
+            }
+        }
+        synsets.add(id, Arrays.copyOf(distinct, count));
+        return this;
+    }
+
+    // adds an edge from the synset to one of its hypernyms
+    public WordNetUpdate addHypernym(int synset, int hypernym) {
+        if (synset < 0 || hypernym < 0) {
+            throw new IllegalArgumentException("Synset ids must be non-negative");
+        }
+        edges.add(synset, hypernym);
+        return this;
+    }
+
+    /* The nouns of the added synsets, indexed by id - firstId. Every id from firstId on must be added exactly
+    once and no other id may be. */
+    String[][] synsets(int firstId) {
+        String[][] added = new String[synsets.size()][];
+        for (int i = 0; i < synsets.size(); i++) {
+            int index = synsets.id(i) - firstId;
+            if (index < 0 || index >= added.length || added[index] != null) {
+                throw new IllegalArgumentException("Added synset ids must be " + firstId + " .. "
+                        + (firstId + added.length - 1) + " without repeats, found " + synsets.id(i));
+            }
+            added[index] = synsets.nouns(i);
+        }
+        return added;
+    }
+
+    int[] from() {
+        return edges.from();
+    }
+
+    int[] to() {
+        return edges.to();
+    }
+}